@@ -1,9 +1,18 @@
 package org.tesco.file;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Properties;
 
+import org.apache.camel.Endpoint;
 import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.file.GenericFileEndpoint;
+import org.apache.camel.model.RouteDefinition;
+import org.tesco.file.component.DirectoryComponent;
+import org.tesco.file.compress.ParallelGzipProcessor;
+import org.tesco.file.copy.BufferPool;
+import org.tesco.file.idempotent.MappedIdempotentRepository;
+import org.tesco.file.metrics.ThroughputCounter;
 
 public class FileRoute extends RouteBuilder {
 
@@ -17,9 +26,67 @@ public class FileRoute extends RouteBuilder {
 	}
     }
 
+    private MappedIdempotentRepository idempotentRepository;
+    private ParallelGzipProcessor compressor;
+
     @Override
     public void configure() throws Exception {
-	from(getInputLocation()).to(getOutputLocation());
+	DirectoryComponent component = new DirectoryComponent();
+	component.setBufferPool(new BufferPool(getBufferPoolSize()));
+	getContext().addService(component.getBufferPool());
+	getContext().addComponent("dir", component);
+
+	int partitions = getInputPartitions();
+	if (partitions > 1) {
+	    if (!getInputLocation().startsWith("dir:")) {
+		throw new IllegalArgumentException("file.input.partitions needs a dir:// input, not " + getInputLocation());
+	    }
+	    String separator = getInputLocation().contains("?") ? "&" : "?";
+	    for (int partition = 0; partition < partitions; partition++) {
+		ThroughputCounter counter = new ThroughputCounter("partition-" + partition);
+		getContext().addService(counter);
+
+		compress(from(input(getInputLocation() + separator + "partitions=" + partitions + "&partition=" + partition))
+			.routeId("partition-" + partition))
+			.to(getOutputLocation())
+			.process(counter);
+	    }
+	} else {
+	    compress(from(input(getInputLocation()))).to(getOutputLocation());
+	}
+    }
+
+    private RouteDefinition compress(RouteDefinition route) throws Exception {
+	if (!isCompress()) {
+	    return route;
+	}
+	// one pool of workers shared by all partitions
+	if (compressor == null) {
+	    compressor = new ParallelGzipProcessor(new File(getCompressWorkDirectory()), getCompressThreads(), getCompressLevel(), getCompressBlockSize());
+	    getContext().addService(compressor);
+	}
+	return route.process(compressor);
+    }
+
+    private Endpoint input(String uri) {
+	Endpoint input = endpoint(uri);
+	if (getIdempotentStore() != null && input instanceof GenericFileEndpoint) {
+	    GenericFileEndpoint<?> files = (GenericFileEndpoint<?>) input;
+	    files.setIdempotent(true);
+	    files.setIdempotentRepository(getIdempotentRepository());
+	    if (files.getIdempotentKey() == null) {
+		files.setIdempotentKey(simple("${file:name}-${file:size}-${file:modified}"));
+	    }
+	}
+	return input;
+    }
+
+    private MappedIdempotentRepository getIdempotentRepository() {
+	// one store shared by all partitions
+	if (idempotentRepository == null) {
+	    idempotentRepository = new MappedIdempotentRepository(new File(getIdempotentStore()), getIdempotentCapacity());
+	}
+	return idempotentRepository;
     }
 
     private String getInputLocation() {
@@ -29,4 +96,40 @@ public class FileRoute extends RouteBuilder {
     private String getOutputLocation(){
 	return properties.getProperty("file.output");
     }
+
+    private String getIdempotentStore() {
+	return properties.getProperty("file.idempotent.store");
+    }
+
+    private long getIdempotentCapacity() {
+	return Long.parseLong(properties.getProperty("file.idempotent.capacity", "1048576"));
+    }
+
+    private long getBufferPoolSize() {
+	return Long.parseLong(properties.getProperty("file.buffer.pool", "67108864"));
+    }
+
+    private boolean isCompress() {
+	return Boolean.parseBoolean(properties.getProperty("file.compress", "false"));
+    }
+
+    private int getCompressLevel() {
+	return Integer.parseInt(properties.getProperty("file.compress.level", "6"));
+    }
+
+    private int getCompressBlockSize() {
+	return Integer.parseInt(properties.getProperty("file.compress.blockSize", "1048576"));
+    }
+
+    private int getCompressThreads() {
+	return Integer.parseInt(properties.getProperty("file.compress.threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+    }
+
+    private String getCompressWorkDirectory() {
+	return properties.getProperty("file.compress.workDirectory", "data/.compress");
+    }
+
+    private int getInputPartitions() {
+	return Integer.parseInt(properties.getProperty("file.input.partitions", "1"));
+    }
 }
@@ -0,0 +1,59 @@
+package org.tesco.file.body;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.camel.WrappedFile;
+import org.apache.camel.component.file.GenericFile;
+
+/**
+ * Message body that stands for a file without holding any of its content.
+ * It converts to an {@link java.io.InputStream}, a {@link FileChannel} or a
+ * read-only mapping, all of which read straight from the file, but only
+ * turns into a <tt>byte[]</tt> or <tt>String</tt> up to
+ * <tt>maxHeapSize</tt> bytes, so an unsuspecting processor cannot pull a
+ * huge file onto the heap.
+ * <p>
+ * As a {@link WrappedFile} it is still written file to file by the
+ * producers.
+ */
+public class StreamingFileBody implements WrappedFile<File> {
+
+    private final GenericFile<File> file;
+    private final long maxHeapSize;
+
+    public StreamingFileBody(GenericFile<File> file, long maxHeapSize) {
+	this.file = file;
+	this.maxHeapSize = maxHeapSize;
+    }
+
+    @Override
+    public File getFile() {
+	// a renamed generic file keeps the file it was copied from, only its path is current
+	return new File(file.getAbsoluteFilePath());
+    }
+
+    @Override
+    public Object getBody() {
+	return getFile();
+    }
+
+    public long getLength() {
+	return getFile().length();
+    }
+
+    public long getMaxHeapSize() {
+	return maxHeapSize;
+    }
+
+    public FileChannel openChannel() throws IOException {
+	return FileChannel.open(getFile().toPath(), StandardOpenOption.READ);
+    }
+
+    @Override
+    public String toString() {
+	return "StreamingFileBody[" + getFile() + "]";
+    }
+}
@@ -0,0 +1,94 @@
+package org.tesco.file.body;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.camel.Converter;
+import org.apache.camel.Exchange;
+import org.apache.camel.util.IOHelper;
+
+/**
+ * Type converters of {@link StreamingFileBody}. Streams, channels and
+ * mappings read from the file as they are consumed; only
+ * {@link #toByteArray} and {@link #toString} copy the content onto the heap,
+ * and they refuse files over the body's limit.
+ */
+@Converter
+public final class StreamingFileBodyConverter {
+
+    private StreamingFileBodyConverter() {
+    }
+
+    @Converter
+    public static File toFile(StreamingFileBody body) {
+	return body.getFile();
+    }
+
+    @Converter
+    public static Path toPath(StreamingFileBody body) {
+	return body.getFile().toPath();
+    }
+
+    @Converter
+    public static InputStream toInputStream(StreamingFileBody body) throws IOException {
+	return Channels.newInputStream(body.openChannel());
+    }
+
+    @Converter
+    public static ReadableByteChannel toReadableByteChannel(StreamingFileBody body) throws IOException {
+	return body.openChannel();
+    }
+
+    @Converter
+    public static FileChannel toFileChannel(StreamingFileBody body) throws IOException {
+	return body.openChannel();
+    }
+
+    /**
+     * Maps the file read-only, which keeps the content in the page cache
+     * rather than on the heap.
+     */
+    @Converter
+    public static ByteBuffer toByteBuffer(StreamingFileBody body) throws IOException {
+	try (FileChannel channel = body.openChannel()) {
+	    long size = channel.size();
+	    if (size > Integer.MAX_VALUE) {
+		throw new IOException("Cannot map " + body.getFile() + " of " + size + " bytes into one buffer, read it as a stream");
+	    }
+	    return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+	}
+    }
+
+    @Converter
+    public static byte[] toByteArray(StreamingFileBody body) throws IOException {
+	checkHeapSize(body);
+	return Files.readAllBytes(body.getFile().toPath());
+    }
+
+    @Converter
+    public static String toString(StreamingFileBody body, Exchange exchange) throws IOException {
+	byte[] bytes = toByteArray(body);
+	String charset = IOHelper.getCharsetName(exchange);
+	try {
+	    return new String(bytes, charset);
+	} catch (UnsupportedEncodingException e) {
+	    throw new IOException("Cannot read " + body.getFile() + " as " + charset, e);
+	}
+    }
+
+    private static void checkHeapSize(StreamingFileBody body) throws IOException {
+	long length = body.getLength();
+	if (length > body.getMaxHeapSize()) {
+	    throw new IOException("Refusing to load " + body.getFile() + " of " + length + " bytes onto the heap, the limit is "
+		    + body.getMaxHeapSize() + ", read it as a stream");
+	}
+    }
+}
@@ -0,0 +1,23 @@
+package org.tesco.file.bundle;
+
+/**
+ * Archive format of the bundles small files are packed into.
+ */
+public enum BundleFormat {
+
+    /** ustar, with pax headers for names that do not fit. */
+    TAR(".tar"),
+
+    /** Zip with stored, uncompressed entries. */
+    ZIP(".zip");
+
+    private final String extension;
+
+    BundleFormat(String extension) {
+	this.extension = extension;
+    }
+
+    public String getExtension() {
+	return extension;
+    }
+}
@@ -0,0 +1,36 @@
+package org.tesco.file.bundle;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Appends entries to one open bundle.
+ */
+public interface BundleWriter {
+
+    /**
+     * @param content the file, opened and closed by the caller
+     * @return the offset of the entry's content within the bundle
+     */
+    long append(String name, long lastModified, FileChannel content) throws IOException;
+
+    /**
+     * @return the offset of the entry's content within the bundle
+     */
+    long append(String name, long lastModified, byte[] content) throws IOException;
+
+    /**
+     * @return the bytes written so far
+     */
+    long size();
+
+    /**
+     * Writes what ends the archive, forces it to disk and closes it.
+     */
+    void finish() throws IOException;
+
+    /**
+     * Closes the bundle without finishing it.
+     */
+    void abort();
+}
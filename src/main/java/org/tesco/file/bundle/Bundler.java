@@ -0,0 +1,239 @@
+package org.tesco.file.bundle;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Packs files into rolling bundles in a directory. A bundle is written as a
+ * hidden <tt>.part</tt> file and closed once it reaches <tt>maxSize</tt>
+ * bytes or <tt>maxAge</tt> millis, which syncs it, renames it to
+ * <tt>bundle-&lt;time&gt;-&lt;sequence&gt;.tar</tt> or <tt>.zip</tt> and
+ * completes the entries it holds. Next to it goes its index,
+ * <tt>.idx</tt>, with a line of <tt>offset length name</tt> per entry, the
+ * offset being where the entry's content starts in the bundle.
+ * <p>
+ * A name comes at most once per bundle; a file sent again starts the next.
+ */
+public class Bundler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Bundler.class);
+
+    private final File directory;
+    private final BundleFormat format;
+    private final long maxSize;
+    private final long maxAge;
+    private final AtomicLong bundles = new AtomicLong();
+    private final AtomicLong entries = new AtomicLong();
+    private long sequence;
+    private Bundle current;
+
+    public Bundler(File directory, BundleFormat format, long maxSize, long maxAge) {
+	this.directory = directory;
+	this.format = format;
+	this.maxSize = maxSize;
+	this.maxAge = maxAge;
+    }
+
+    /**
+     * Told once the bundle holding an entry is closed.
+     */
+    public interface Completion {
+
+	/**
+	 * @param bundle the bundle the entry is in, <tt>null</tt> if it failed
+	 * @param cause why it failed, <tt>null</tt> if it did not
+	 */
+	void done(File bundle, Exception cause);
+    }
+
+    public long getBundles() {
+	return bundles.get();
+    }
+
+    public long getEntries() {
+	return entries.get();
+    }
+
+    /**
+     * Appends a file, or with <tt>file</tt> <tt>null</tt> the given content,
+     * to the open bundle. The completion is told once that bundle is closed.
+     * A file that cannot be opened fails only this entry, the bundle stays
+     * open; a failure while writing fails the bundle and all its entries.
+     */
+    public void append(String name, long lastModified, File file, byte[] content, Completion completion) throws IOException {
+	// opened before the bundle is touched, so a vanished or unreadable file is thrown on its own
+	try (FileChannel source = file != null ? FileChannel.open(file.toPath(), StandardOpenOption.READ) : null) {
+	    append(name, lastModified, source, content, completion);
+	}
+    }
+
+    private void append(String name, long lastModified, FileChannel source, byte[] content, Completion completion) throws IOException {
+	List<Closed> closed = new ArrayList<Closed>(2);
+	try {
+	    synchronized (this) {
+		if (current != null && current.names.contains(name)) {
+		    closed.add(close(current));
+		}
+		if (current == null) {
+		    current = open();
+		}
+		Bundle bundle = current;
+		try {
+		    long length = source != null ? source.size() : content.length;
+		    long offset = source != null ? bundle.writer.append(name, lastModified, source) : bundle.writer.append(name, lastModified, content);
+		    bundle.index.write(offset + " " + length + " " + name + "\n");
+		} catch (IOException e) {
+		    // the archive may be cut mid entry, so fail it as a whole
+		    closed.add(abort(bundle, e));
+		    throw e;
+		}
+		bundle.names.add(name);
+		bundle.completions.add(completion);
+		entries.incrementAndGet();
+		if (bundle.writer.size() >= maxSize) {
+		    closed.add(close(bundle));
+		}
+	    }
+	} finally {
+	    for (Closed done : closed) {
+		done.complete();
+	    }
+	}
+    }
+
+    /**
+     * Closes the open bundle if it is older than <tt>maxAge</tt>, or when
+     * <tt>force</tt> is set.
+     */
+    public void closeExpired(boolean force) {
+	Closed closed = null;
+	synchronized (this) {
+	    if (current != null && (force || System.currentTimeMillis() - current.opened >= maxAge)) {
+		closed = close(current);
+	    }
+	}
+	if (closed != null) {
+	    closed.complete();
+	}
+    }
+
+    /**
+     * Deletes bundles an earlier run left open. Their entries never completed,
+     * so they are sent again.
+     */
+    public void deleteLeftovers() throws IOException {
+	Files.createDirectories(directory.toPath());
+	File[] files = directory.listFiles();
+	if (files != null) {
+	    for (File file : files) {
+		if (file.getName().startsWith(".bundle-") && file.getName().endsWith(".part")) {
+		    LOG.info("Deleting bundle left open by an earlier run: {}", file);
+		    Files.deleteIfExists(file.toPath());
+		}
+	    }
+	}
+    }
+
+    private Bundle open() throws IOException {
+	String name = String.format("bundle-%d-%06d", System.currentTimeMillis(), sequence++) + format.getExtension();
+	return new Bundle(name);
+    }
+
+    /**
+     * Syncs the bundle and its index and renames them into place, index
+     * first so a visible bundle always has one. Its entries are completed by
+     * the caller, outside the lock.
+     */
+    private Closed close(Bundle bundle) {
+	current = null;
+	File target = new File(directory, bundle.name);
+	try {
+	    bundle.index.flush();
+	    bundle.indexStream.getChannel().force(true);
+	    bundle.index.close();
+	    bundle.writer.finish();
+	    Files.move(bundle.indexPart.toPath(), new File(directory, bundle.name + ".idx").toPath(), StandardCopyOption.ATOMIC_MOVE);
+	    Files.move(bundle.part.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+	    try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+		channel.force(true);
+	    }
+	} catch (IOException e) {
+	    return abort(bundle, e);
+	}
+	bundles.incrementAndGet();
+	LOG.debug("Closed bundle {} of {} entries and {} bytes", target, bundle.completions.size(), bundle.writer.size());
+	return new Closed(target, null, bundle.completions);
+    }
+
+    private Closed abort(Bundle bundle, Exception cause) {
+	current = null;
+	LOG.warn("Cannot write bundle {}, failing its {} entries due {}", bundle.name, bundle.completions.size(), cause.getMessage());
+	bundle.writer.abort();
+	try {
+	    bundle.index.close();
+	} catch (IOException e) {
+	    // deleted next
+	}
+	bundle.part.delete();
+	bundle.indexPart.delete();
+	return new Closed(null, cause, bundle.completions);
+    }
+
+    private static final class Closed {
+
+	private final File bundle;
+	private final Exception cause;
+	private final List<Completion> completions;
+
+	Closed(File bundle, Exception cause, List<Completion> completions) {
+	    this.bundle = bundle;
+	    this.cause = cause;
+	    this.completions = completions;
+	}
+
+	void complete() {
+	    for (Completion completion : completions) {
+		completion.done(bundle, cause);
+	    }
+	}
+    }
+
+    private final class Bundle {
+
+	private final String name;
+	private final File part;
+	private final File indexPart;
+	private final BundleWriter writer;
+	private final FileOutputStream indexStream;
+	private final Writer index;
+	private final Set<String> names = new HashSet<String>();
+	private final List<Completion> completions = new ArrayList<Completion>();
+	private final long opened = System.currentTimeMillis();
+
+	Bundle(String name) throws IOException {
+	    this.name = name;
+	    this.part = new File(directory, "." + name + ".part");
+	    this.indexPart = new File(directory, "." + name + ".idx.part");
+	    this.writer = format == BundleFormat.ZIP ? new ZipBundleWriter(part) : new TarBundleWriter(part);
+	    this.indexStream = new FileOutputStream(indexPart);
+	    this.index = new BufferedWriter(new OutputStreamWriter(indexStream, StandardCharsets.UTF_8), 64 * 1024);
+	}
+    }
+}
@@ -0,0 +1,186 @@
+package org.tesco.file.bundle;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a ustar archive. File content is transferred channel to channel;
+ * names longer than the header holds get a pax extended header first.
+ */
+public class TarBundleWriter implements BundleWriter {
+
+    private static final int BLOCK = 512;
+    private static final long MAX_OCTAL_SIZE = 077777777777L;
+
+    private final FileChannel out;
+    private long position;
+
+    public TarBundleWriter(File bundle) throws IOException {
+	this.out = FileChannel.open(bundle.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    @Override
+    public long append(String name, long lastModified, FileChannel in) throws IOException {
+	long length = in.size();
+	header(name, lastModified, length);
+	long offset = position;
+	long transferred = 0;
+	while (transferred < length) {
+	    long count = in.transferTo(transferred, length - transferred, out);
+	    if (count <= 0) {
+		throw new IOException("File " + name + " shrank to " + transferred + " bytes while it was bundled");
+	    }
+	    transferred += count;
+	}
+	position += length;
+	pad();
+	return offset;
+    }
+
+    @Override
+    public long append(String name, long lastModified, byte[] content) throws IOException {
+	header(name, lastModified, content.length);
+	long offset = position;
+	write(ByteBuffer.wrap(content));
+	pad();
+	return offset;
+    }
+
+    @Override
+    public long size() {
+	return position;
+    }
+
+    @Override
+    public void finish() throws IOException {
+	try {
+	    // two empty blocks end the archive
+	    write(ByteBuffer.allocate(2 * BLOCK));
+	    out.force(true);
+	} finally {
+	    out.close();
+	}
+    }
+
+    @Override
+    public void abort() {
+	try {
+	    out.close();
+	} catch (IOException e) {
+	    // nothing left to do with it
+	}
+    }
+
+    private void header(String name, long lastModified, long length) throws IOException {
+	byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+	String prefix = "";
+	if (bytes.length > 100) {
+	    int split = splitPoint(bytes);
+	    if (split > 0) {
+		prefix = new String(bytes, 0, split, StandardCharsets.UTF_8);
+		name = new String(bytes, split + 1, bytes.length - split - 1, StandardCharsets.UTF_8);
+	    } else {
+		byte[] record = paxRecord("path", name);
+		write(ByteBuffer.wrap(block("PaxHeaders/" + truncate(name), "", lastModified, record.length, 'x')));
+		write(ByteBuffer.wrap(record));
+		pad();
+		name = truncate(name);
+	    }
+	}
+	write(ByteBuffer.wrap(block(name, prefix, lastModified, length, '0')));
+    }
+
+    /**
+     * @return where to split a long name into ustar prefix and name at a
+     *         <tt>/</tt>, or -1 if it cannot be
+     */
+    private static int splitPoint(byte[] name) {
+	for (int i = name.length - 101; i < name.length && i <= 155; i++) {
+	    if (i > 0 && name[i] == '/') {
+		return i;
+	    }
+	}
+	return -1;
+    }
+
+    private static String truncate(String name) {
+	byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+	return bytes.length <= 100 ? name : new String(bytes, bytes.length - 80, 80, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] paxRecord(String key, String value) {
+	// "<length> key=value\n", the length counting its own digits
+	int length = key.length() + value.getBytes(StandardCharsets.UTF_8).length + 3;
+	int total = length + String.valueOf(length).length();
+	if (String.valueOf(total).length() > String.valueOf(length).length()) {
+	    total++;
+	}
+	return (total + " " + key + "=" + value + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] block(String name, String prefix, long lastModified, long length, char type) {
+	byte[] header = new byte[BLOCK];
+	put(header, 0, 100, name.getBytes(StandardCharsets.UTF_8));
+	octal(header, 100, 8, 0644);
+	octal(header, 108, 8, 0);
+	octal(header, 116, 8, 0);
+	if (length <= MAX_OCTAL_SIZE) {
+	    octal(header, 124, 12, length);
+	} else {
+	    // base-256, as GNU tar and pax readers take it
+	    header[124] = (byte) 0x80;
+	    for (int i = 0; i < 8; i++) {
+		header[135 - i] = (byte) (length >>> (8 * i));
+	    }
+	}
+	octal(header, 136, 12, Math.max(0, lastModified / 1000));
+	header[156] = (byte) type;
+	put(header, 257, 6, "ustar\0".getBytes(StandardCharsets.US_ASCII));
+	put(header, 263, 2, "00".getBytes(StandardCharsets.US_ASCII));
+	put(header, 345, 155, prefix.getBytes(StandardCharsets.UTF_8));
+
+	// the checksum is summed with its own field as spaces
+	for (int i = 148; i < 156; i++) {
+	    header[i] = ' ';
+	}
+	long checksum = 0;
+	for (byte b : header) {
+	    checksum += b & 0xff;
+	}
+	octal(header, 148, 7, checksum);
+	return header;
+    }
+
+    private static void put(byte[] header, int offset, int size, byte[] value) {
+	System.arraycopy(value, 0, header, offset, Math.min(size, value.length));
+    }
+
+    /**
+     * Zero padded octal digits ending in a NUL, filling <tt>size</tt> bytes.
+     */
+    private static void octal(byte[] header, int offset, int size, long value) {
+	String digits = Long.toOctalString(value);
+	for (int i = 0; i < size - 1; i++) {
+	    int from = digits.length() - (size - 1) + i;
+	    header[offset + i] = (byte) (from < 0 ? '0' : digits.charAt(from));
+	}
+	header[offset + size - 1] = 0;
+    }
+
+    private void pad() throws IOException {
+	int padding = (int) (-position & (BLOCK - 1));
+	if (padding > 0) {
+	    write(ByteBuffer.allocate(padding));
+	}
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+	while (buffer.hasRemaining()) {
+	    position += out.write(buffer);
+	}
+    }
+}
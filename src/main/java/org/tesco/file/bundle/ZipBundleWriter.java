@@ -0,0 +1,127 @@
+package org.tesco.file.bundle;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes a zip archive of stored entries, so every entry can be read in place
+ * at its offset. A stored entry needs its CRC before its content, so a file
+ * is read once for the CRC and once to copy it; small files are still in the
+ * page cache the second time.
+ */
+public class ZipBundleWriter implements BundleWriter {
+
+    private final FileOutputStream file;
+    private final CountingOutputStream counter;
+    private final ZipOutputStream out;
+
+    public ZipBundleWriter(File bundle) throws IOException {
+	this.file = new FileOutputStream(bundle);
+	this.counter = new CountingOutputStream(new BufferedOutputStream(file, 64 * 1024));
+	this.out = new ZipOutputStream(counter);
+    }
+
+    @Override
+    public long append(String name, long lastModified, FileChannel in) throws IOException {
+	CRC32 crc = new CRC32();
+	ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+	long length = 0;
+	int read;
+	while ((read = in.read(buffer)) >= 0) {
+	    crc.update(buffer.array(), 0, read);
+	    length += read;
+	    ((Buffer) buffer).clear();
+	}
+	long offset = entry(name, lastModified, length, crc.getValue());
+	long copied = 0;
+	in.position(0);
+	while ((read = in.read(buffer)) >= 0) {
+	    out.write(buffer.array(), 0, read);
+	    copied += read;
+	    ((Buffer) buffer).clear();
+	}
+	if (copied != length) {
+	    throw new IOException("File " + name + " changed while it was bundled");
+	}
+	out.closeEntry();
+	return offset;
+    }
+
+    @Override
+    public long append(String name, long lastModified, byte[] content) throws IOException {
+	CRC32 crc = new CRC32();
+	crc.update(content);
+	long offset = entry(name, lastModified, content.length, crc.getValue());
+	out.write(content);
+	out.closeEntry();
+	return offset;
+    }
+
+    private long entry(String name, long lastModified, long length, long crc) throws IOException {
+	ZipEntry entry = new ZipEntry(name);
+	entry.setMethod(ZipEntry.STORED);
+	entry.setSize(length);
+	entry.setCompressedSize(length);
+	entry.setCrc(crc);
+	entry.setTime(lastModified);
+	out.putNextEntry(entry);
+	// the local header went straight through
+	return counter.count;
+    }
+
+    @Override
+    public long size() {
+	return counter.count;
+    }
+
+    @Override
+    public void finish() throws IOException {
+	try {
+	    out.finish();
+	    out.flush();
+	    file.getChannel().force(true);
+	} finally {
+	    out.close();
+	}
+    }
+
+    @Override
+    public void abort() {
+	try {
+	    file.close();
+	} catch (IOException e) {
+	    // nothing left to do with it
+	}
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+
+	private long count;
+
+	CountingOutputStream(OutputStream out) {
+	    super(out);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+	    out.write(b);
+	    count++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+	    out.write(b, off, len);
+	    count += len;
+	}
+    }
+}
@@ -0,0 +1,49 @@
+package org.tesco.file.checksum;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+
+/**
+ * Records the checksums of written files, either in sidecars next to each
+ * file, <tt>name.crc32c</tt> and <tt>name.sha256</tt> in the format of
+ * <tt>sha256sum</tt>, or as one line per file appended to a manifest in the
+ * file's directory:
+ *
+ * <pre>
+ * crc32c sha256|- length name
+ * </pre>
+ */
+public class ChecksumManifest {
+
+    private final String manifestName;
+
+    /**
+     * @param manifestName name of the manifest, or <tt>null</tt> for sidecars
+     */
+    public ChecksumManifest(String manifestName) {
+	this.manifestName = manifestName;
+    }
+
+    public synchronized void record(File file, ContentChecksum checksum) throws IOException {
+	String sha256 = checksum.getSha256();
+	if (manifestName != null) {
+	    String line = checksum.getCrc32c() + " " + (sha256 != null ? sha256 : "-") + " " + checksum.getLength() + " " + file.getName();
+	    Files.write(new File(file.getParentFile(), manifestName).toPath(), Collections.singletonList(line), StandardCharsets.UTF_8,
+		    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	    return;
+	}
+	sidecar(file, "crc32c", checksum.getCrc32c());
+	if (sha256 != null) {
+	    sidecar(file, "sha256", sha256);
+	}
+    }
+
+    private static void sidecar(File file, String extension, String value) throws IOException {
+	File sidecar = new File(file.getParentFile(), file.getName() + "." + extension);
+	Files.write(sidecar.toPath(), Collections.singletonList(value + "  " + file.getName()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,88 @@
+package org.tesco.file.checksum;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.Checksum;
+
+/**
+ * The CRC32C, and optionally the SHA-256, of content as it passes through a
+ * copy, so the file never has to be read a second time to checksum it.
+ */
+public class ContentChecksum {
+
+    /** Header with the hex CRC32C of a file, checked if present and set once written. */
+    public static final String CRC32C = "CamelFileChecksumCrc32c";
+    /** Header with the hex SHA-256 of a file, checked if present and set once written. */
+    public static final String SHA256 = "CamelFileChecksumSha256";
+
+    private final Checksum crc = Crc32c.create();
+    private final MessageDigest sha256;
+    private String sha256Hex;
+    private byte[] scratch;
+    private long length;
+
+    public ContentChecksum(boolean sha256) {
+	try {
+	    this.sha256 = sha256 ? MessageDigest.getInstance("SHA-256") : null;
+	} catch (NoSuchAlgorithmException e) {
+	    throw new IllegalStateException("Every Java platform has SHA-256", e);
+	}
+    }
+
+    /**
+     * Adds the remaining bytes of <tt>buffer</tt>, leaving its position alone
+     * so it can still be written.
+     */
+    public void update(ByteBuffer buffer) {
+	if (buffer.hasArray()) {
+	    update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+	    return;
+	}
+	// Java 8 checksums only take arrays
+	ByteBuffer content = buffer.duplicate();
+	if (scratch == null) {
+	    scratch = new byte[64 * 1024];
+	}
+	while (content.hasRemaining()) {
+	    int chunk = Math.min(content.remaining(), scratch.length);
+	    content.get(scratch, 0, chunk);
+	    update(scratch, 0, chunk);
+	}
+    }
+
+    public void update(byte[] b, int off, int len) {
+	crc.update(b, off, len);
+	if (sha256 != null) {
+	    sha256.update(b, off, len);
+	}
+	length += len;
+    }
+
+    public long getLength() {
+	return length;
+    }
+
+    /**
+     * @return the CRC32C as 8 hex digits
+     */
+    public String getCrc32c() {
+	return String.format("%08x", crc.getValue());
+    }
+
+    /**
+     * @return the SHA-256 as 64 hex digits, or <tt>null</tt> if it is not
+     *         computed. Only call once all content is added.
+     */
+    public String getSha256() {
+	if (sha256 != null && sha256Hex == null) {
+	    // digest() resets it, so keep the result
+	    StringBuilder hex = new StringBuilder(64);
+	    for (byte b : sha256.digest()) {
+		hex.append(String.format("%02x", b));
+	    }
+	    sha256Hex = hex.toString();
+	}
+	return sha256Hex;
+    }
+}
@@ -0,0 +1,89 @@
+package org.tesco.file.checksum;
+
+import java.lang.reflect.Constructor;
+import java.util.zip.Checksum;
+
+/**
+ * CRC32C, the Castagnoli polynomial of iSCSI, ext4 and most storage formats,
+ * computed eight bytes at a time. Java 9 and later come with their own, backed
+ * by the CPU's crc32 instruction, which {@link #create()} prefers whenever the
+ * runtime has it.
+ */
+public class Crc32c implements Checksum {
+
+    private static final int[] TABLE = new int[8 * 256];
+    private static final Constructor<?> PLATFORM;
+
+    static {
+	for (int n = 0; n < 256; n++) {
+	    int crc = n;
+	    for (int k = 0; k < 8; k++) {
+		crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0x82F63B78 : crc >>> 1;
+	    }
+	    TABLE[n] = crc;
+	}
+	for (int n = 0; n < 256; n++) {
+	    int crc = TABLE[n];
+	    for (int slice = 1; slice < 8; slice++) {
+		crc = TABLE[crc & 0xff] ^ (crc >>> 8);
+		TABLE[slice * 256 + n] = crc;
+	    }
+	}
+
+	Constructor<?> platform;
+	try {
+	    platform = Class.forName("java.util.zip.CRC32C").getConstructor();
+	} catch (ReflectiveOperationException e) {
+	    platform = null;
+	}
+	PLATFORM = platform;
+    }
+
+    private int crc = 0xffffffff;
+
+    /**
+     * @return the runtime's CRC32C if it has one, this one otherwise
+     */
+    public static Checksum create() {
+	if (PLATFORM != null) {
+	    try {
+		return (Checksum) PLATFORM.newInstance();
+	    } catch (ReflectiveOperationException e) {
+		// fall through
+	    }
+	}
+	return new Crc32c();
+    }
+
+    @Override
+    public void update(int b) {
+	crc = TABLE[(crc ^ b) & 0xff] ^ (crc >>> 8);
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+	int c = crc;
+	int end = off + len;
+	while (end - off >= 8) {
+	    c ^= (b[off] & 0xff) | (b[off + 1] & 0xff) << 8 | (b[off + 2] & 0xff) << 16 | b[off + 3] << 24;
+	    c = TABLE[7 * 256 + (c & 0xff)] ^ TABLE[6 * 256 + ((c >>> 8) & 0xff)] ^ TABLE[5 * 256 + ((c >>> 16) & 0xff)]
+		    ^ TABLE[4 * 256 + (c >>> 24)] ^ TABLE[3 * 256 + (b[off + 4] & 0xff)] ^ TABLE[2 * 256 + (b[off + 5] & 0xff)]
+		    ^ TABLE[256 + (b[off + 6] & 0xff)] ^ TABLE[b[off + 7] & 0xff];
+	    off += 8;
+	}
+	while (off < end) {
+	    c = TABLE[(c ^ b[off++]) & 0xff] ^ (c >>> 8);
+	}
+	crc = c;
+    }
+
+    @Override
+    public long getValue() {
+	return ~crc & 0xffffffffL;
+    }
+
+    @Override
+    public void reset() {
+	crc = 0xffffffff;
+    }
+}
@@ -0,0 +1,185 @@
+package org.tesco.file.component;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Consumer;
+import org.apache.camel.Endpoint;
+import org.apache.camel.spi.PollingConsumerPollStrategy;
+import org.apache.camel.spi.ScheduledPollConsumerScheduler;
+import org.apache.camel.support.ServiceSupport;
+import org.apache.camel.util.ObjectHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Poll scheduler that doubles the delay after every poll that finds nothing,
+ * up to <tt>maxIdleDelay</tt>, and drops straight back to the consumer's
+ * <tt>delay</tt> as soon as a poll picks up a file. Idle polls are counted
+ * instead of being routed as empty exchanges.
+ * <p>
+ * It also acts as the consumer's poll strategy, as that is where the number of
+ * polled files is reported; the original strategy is still called.
+ */
+public class AdaptivePollScheduler extends ServiceSupport implements ScheduledPollConsumerScheduler, PollingConsumerPollStrategy {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptivePollScheduler.class);
+
+    private final PollingConsumerPollStrategy pollStrategy;
+    private final long maxIdleDelay;
+    private final AtomicLong idlePolls = new AtomicLong();
+    private CamelContext camelContext;
+    private Consumer consumer;
+    private Runnable task;
+    private ScheduledExecutorService executor;
+    private volatile ScheduledFuture<?> future;
+    private long initialDelay = 1000;
+    private long delay = 500;
+    private TimeUnit timeUnit = TimeUnit.MILLISECONDS;
+    private volatile long currentDelay;
+    private volatile int lastPolled;
+
+    public AdaptivePollScheduler(PollingConsumerPollStrategy pollStrategy, long maxIdleDelay) {
+	this.pollStrategy = pollStrategy;
+	this.maxIdleDelay = maxIdleDelay;
+    }
+
+    @Override
+    public CamelContext getCamelContext() {
+	return camelContext;
+    }
+
+    @Override
+    public void setCamelContext(CamelContext camelContext) {
+	this.camelContext = camelContext;
+    }
+
+    public void setInitialDelay(long initialDelay) {
+	this.initialDelay = initialDelay;
+    }
+
+    public void setDelay(long delay) {
+	this.delay = delay;
+    }
+
+    public void setTimeUnit(TimeUnit timeUnit) {
+	this.timeUnit = timeUnit;
+    }
+
+    /**
+     * Number of polls that found no files.
+     */
+    public long getIdlePolls() {
+	return idlePolls.get();
+    }
+
+    /**
+     * The delay in milliseconds before the next poll.
+     */
+    public long getCurrentDelay() {
+	return timeUnit.toMillis(currentDelay);
+    }
+
+    @Override
+    public void onInit(Consumer consumer) {
+	this.consumer = consumer;
+    }
+
+    @Override
+    public void scheduleTask(Runnable task) {
+	this.task = task;
+    }
+
+    @Override
+    public void unscheduleTask() {
+	ScheduledFuture<?> current = future;
+	if (current != null) {
+	    current.cancel(true);
+	    future = null;
+	}
+    }
+
+    @Override
+    public void startScheduler() {
+	if (future == null) {
+	    currentDelay = delay;
+	    schedule(initialDelay);
+	}
+    }
+
+    @Override
+    public boolean isSchedulerStarted() {
+	return future != null;
+    }
+
+    private synchronized void schedule(long wait) {
+	if (executor != null && isRunAllowed()) {
+	    future = executor.schedule(new Runnable() {
+		@Override
+		public void run() {
+		    poll();
+		}
+	    }, wait, timeUnit);
+	}
+    }
+
+    private void poll() {
+	lastPolled = -1;
+	try {
+	    task.run();
+	} finally {
+	    if (consumer instanceof DirectoryFileConsumer && ((DirectoryFileConsumer) consumer).isThrottled()) {
+		// not idle but full, poll again at the normal pace
+		currentDelay = delay;
+	    } else if (lastPolled == 0) {
+		idlePolls.incrementAndGet();
+		currentDelay = Math.min(Math.max(currentDelay * 2, 1), timeUnit.convert(maxIdleDelay, TimeUnit.MILLISECONDS));
+	    } else if (lastPolled > 0) {
+		currentDelay = delay;
+	    }
+	    // on errors, or when the consumer is suspended, keep the current pace
+	    if (future != null) {
+		schedule(currentDelay);
+	    }
+	}
+    }
+
+    @Override
+    public boolean begin(Consumer consumer, Endpoint endpoint) {
+	return pollStrategy.begin(consumer, endpoint);
+    }
+
+    @Override
+    public void commit(Consumer consumer, Endpoint endpoint, int polledMessages) {
+	lastPolled = polledMessages;
+	pollStrategy.commit(consumer, endpoint, polledMessages);
+    }
+
+    @Override
+    public boolean rollback(Consumer consumer, Endpoint endpoint, int retryCounter, Exception cause) throws Exception {
+	return pollStrategy.rollback(consumer, endpoint, retryCounter, cause);
+    }
+
+    @Override
+    protected synchronized void doStart() throws Exception {
+	ObjectHelper.notNull(consumer, "Consumer", this);
+	ObjectHelper.notNull(camelContext, "CamelContext", this);
+	ObjectHelper.notNull(task, "Task", this);
+	if (executor == null) {
+	    executor = camelContext.getExecutorServiceManager().newScheduledThreadPool(consumer, consumer.getEndpoint().getEndpointUri(), 1);
+	}
+	LOG.debug("Scheduling adaptive poll with delay: {} up to {} millis when idle for: {}", delay, maxIdleDelay, consumer.getEndpoint());
+    }
+
+    @Override
+    protected synchronized void doStop() throws Exception {
+	unscheduleTask();
+	if (executor != null) {
+	    camelContext.getExecutorServiceManager().shutdownNow(executor);
+	    executor = null;
+	}
+    }
+}
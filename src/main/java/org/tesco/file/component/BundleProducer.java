@@ -0,0 +1,113 @@
+package org.tesco.file.component;
+
+import java.io.File;
+import java.util.Date;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.Exchange;
+import org.apache.camel.WrappedFile;
+import org.apache.camel.component.file.FileOperations;
+import org.apache.camel.component.file.GenericFileOperationFailedException;
+import org.apache.camel.component.file.GenericFileProducer;
+import org.apache.camel.util.AsyncProcessorHelper;
+import org.tesco.file.bundle.Bundler;
+
+/**
+ * Producer of the <tt>dir</tt> component with <tt>bundle</tt> set, packing
+ * every file into the open bundle of a {@link Bundler} instead of writing it
+ * on its own. An exchange completes once its bundle is closed and synced, so
+ * the consumer only lets go of files that are safely bundled.
+ */
+public class BundleProducer extends GenericFileProducer<File> implements AsyncProcessor {
+
+    private final DirectoryEndpoint endpoint;
+    private volatile Bundler bundler;
+    private ScheduledExecutorService scheduler;
+
+    public BundleProducer(DirectoryEndpoint endpoint) {
+	super(endpoint, new FileOperations(endpoint));
+	this.endpoint = endpoint;
+    }
+
+    @Override
+    public void process(Exchange exchange) throws Exception {
+	AsyncProcessorHelper.process(this, exchange);
+    }
+
+    @Override
+    public boolean process(final Exchange exchange, final AsyncCallback callback) {
+	String name = exchange.getIn().getHeader(Exchange.FILE_NAME, String.class);
+	if (name == null) {
+	    name = exchange.getIn().getMessageId();
+	}
+	name = name.replace('\\', '/');
+	Date date = exchange.getIn().getHeader(Exchange.FILE_LAST_MODIFIED, Date.class);
+	long lastModified = date != null ? date.getTime() : System.currentTimeMillis();
+
+	try {
+	    Object body = exchange.getIn().getBody();
+	    if (body instanceof WrappedFile) {
+		body = ((WrappedFile<?>) body).getFile();
+	    }
+	    File file = body instanceof File && ((File) body).isFile() ? (File) body : null;
+	    byte[] content = file == null ? exchange.getIn().getMandatoryBody(byte[].class) : null;
+	    Bundler bundler = this.bundler;
+	    bundler.append(name, lastModified, file, content, new Bundler.Completion() {
+		@Override
+		public void done(File bundle, Exception cause) {
+		    if (cause != null) {
+			exchange.setException(new GenericFileOperationFailedException("Cannot write bundle", cause));
+		    } else {
+			exchange.getIn().setHeader(Exchange.FILE_NAME_PRODUCED, bundle.getAbsolutePath());
+		    }
+		    callback.done(false);
+		}
+	    });
+	    if (isStoppingOrStopped()) {
+		// came in while stopping, maybe after the last bundle was closed, so nothing else would close this one
+		bundler.closeExpired(true);
+	    }
+	    return false;
+	} catch (Exception e) {
+	    exchange.setException(e);
+	    callback.done(true);
+	    return true;
+	}
+    }
+
+    public Bundler getBundler() {
+	return bundler;
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+	super.doStart();
+	bundler = new Bundler(endpoint.getFile(), endpoint.getBundle(), endpoint.getBundleSize(), endpoint.getBundleTimeout());
+	bundler.deleteLeftovers();
+	scheduler = endpoint.getCamelContext().getExecutorServiceManager().newSingleThreadScheduledExecutor(this, "Bundler");
+	long period = Math.max(10, endpoint.getBundleTimeout() / 10);
+	scheduler.scheduleWithFixedDelay(new Runnable() {
+	    @Override
+	    public void run() {
+		bundler.closeExpired(false);
+	    }
+	}, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+	if (scheduler != null) {
+	    endpoint.getCamelContext().getExecutorServiceManager().shutdownNow(scheduler);
+	    scheduler = null;
+	}
+	if (bundler != null) {
+	    // completes the exchanges still waiting; the bundler is kept for those still on their way
+	    bundler.closeExpired(true);
+	    log.debug("Wrote {} entries in {} bundles", bundler.getEntries(), bundler.getBundles());
+	}
+	super.doStop();
+    }
+}
@@ -0,0 +1,16 @@
+package org.tesco.file.component;
+
+/**
+ * How a {@link DirectoryEndpoint} discovers new files.
+ */
+public enum ConsumerMode {
+
+    /** Periodically list the directory, same as the <tt>file</tt> component. */
+    POLL,
+
+    /** Walk the directory lazily and process files as they are found. */
+    STREAM,
+
+    /** React to file system events, with a periodic reconciliation scan. */
+    WATCH
+}
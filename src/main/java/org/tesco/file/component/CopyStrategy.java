@@ -0,0 +1,13 @@
+package org.tesco.file.component;
+
+/**
+ * How a {@link DirectoryEndpoint} producer writes a file body to the target.
+ */
+public enum CopyStrategy {
+
+    /** Copy as the <tt>file</tt> component does. */
+    STREAM,
+
+    /** Copy channel to channel with <tt>transferTo</tt>, in the kernel where possible. */
+    CHANNEL
+}
@@ -0,0 +1,140 @@
+package org.tesco.file.component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Serves a set of lanes in deficit round robin. Each visit credits a lane
+ * with <tt>quantum</tt> bytes times its weight, and the lane is served for as
+ * long as its next file fits into its credit. A lane with a large backlog so
+ * gets the same share of bytes per round as any other, whatever its number of
+ * files.
+ * <p>
+ * Credits and the position in the round are kept between polls. A lane that
+ * runs dry loses its credit. Weights are given as <tt>name:weight</tt> pairs
+ * separated by <tt>;</tt>, lanes not listed weigh 1. A weight must be
+ * positive, as a lane without credit would never be served.
+ */
+public class DeficitRoundRobin {
+
+    /**
+     * Every file costs at least a block, so lanes of empty or tiny files
+     * still take turns.
+     */
+    static final long MIN_COST = 4096;
+
+    public interface Lane {
+
+	String getName();
+
+	/**
+	 * @return the length of the next file of the lane, or <tt>-1</tt> if
+	 *         it has none left
+	 */
+	long peek() throws IOException;
+    }
+
+    private final long quantum;
+    private final Map<String, Integer> weights = new HashMap<String, Integer>();
+    private final Map<String, Long> deficits = new HashMap<String, Long>();
+    private List<Lane> active = new ArrayList<Lane>();
+    private int index;
+    private String current;
+    private boolean credited;
+
+    public DeficitRoundRobin(long quantum, String laneWeights) {
+	if (quantum <= 0) {
+	    throw new IllegalArgumentException("The lane quantum must be positive but was " + quantum);
+	}
+	this.quantum = quantum;
+	if (laneWeights != null && !laneWeights.trim().isEmpty()) {
+	    for (String pair : laneWeights.split(";")) {
+		int idx = pair.lastIndexOf(':');
+		if (idx <= 0) {
+		    throw new IllegalArgumentException("Invalid lane weight, expected name:weight but was " + pair);
+		}
+		int weight;
+		try {
+		    weight = Integer.parseInt(pair.substring(idx + 1).trim());
+		} catch (NumberFormatException e) {
+		    throw new IllegalArgumentException("Invalid lane weight, expected name:weight but was " + pair);
+		}
+		if (weight <= 0) {
+		    throw new IllegalArgumentException("The lane weight must be positive but was " + pair);
+		}
+		weights.put(pair.substring(0, idx).trim(), weight);
+	    }
+	}
+    }
+
+    /**
+     * Begins a round over the given lanes, carrying on with the lane that was
+     * being served when the last one stopped.
+     */
+    public void start(List<? extends Lane> lanes) {
+	active = new ArrayList<Lane>(lanes);
+	Set<String> names = new HashSet<String>();
+	for (Lane lane : active) {
+	    names.add(lane.getName());
+	}
+	// lanes that disappeared take their credit with them
+	deficits.keySet().retainAll(names);
+
+	index = 0;
+	for (int i = 0; i < active.size(); i++) {
+	    if (active.get(i).getName().equals(current)) {
+		index = i;
+		return;
+	    }
+	}
+	credited = false;
+    }
+
+    /**
+     * @return the lane to take the next file from, or <tt>null</tt> once all
+     *         lanes are empty
+     */
+    public Lane next() throws IOException {
+	while (!active.isEmpty()) {
+	    Lane lane = active.get(index);
+	    current = lane.getName();
+	    Long credit = deficits.get(current);
+	    long deficit = credit != null ? credit : 0;
+	    if (!credited) {
+		deficit += quantum * weight(current);
+		credited = true;
+	    }
+
+	    long cost = lane.peek();
+	    if (cost < 0) {
+		deficits.remove(current);
+		active.remove(index);
+		if (index == active.size()) {
+		    index = 0;
+		}
+		credited = false;
+		continue;
+	    }
+	    cost = Math.max(cost, MIN_COST);
+	    if (cost <= deficit) {
+		deficits.put(current, deficit - cost);
+		return lane;
+	    }
+	    deficits.put(current, deficit);
+	    index = (index + 1) % active.size();
+	    credited = false;
+	}
+	current = null;
+	return null;
+    }
+
+    private int weight(String name) {
+	Integer weight = weights.get(name);
+	return weight != null ? weight : 1;
+    }
+}
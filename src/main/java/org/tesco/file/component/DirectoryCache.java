@@ -0,0 +1,169 @@
+package org.tesco.file.component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers, per directory, the modification time and entry count seen on
+ * the last complete listing together with its subdirectories. A directory
+ * whose modification time has not changed since cannot have gained or lost
+ * entries, so a scan can skip listing it and go straight to the remembered
+ * subdirectories: one stat per directory instead of a full read.
+ * <p>
+ * Only directories that were listed completely, with every file either
+ * handed to the route or deliberately skipped, are remembered. Directories
+ * modified within {@link #GRANULARITY} of the listing are not, as a coarse
+ * timestamp could hide a file created right after it.
+ */
+public class DirectoryCache {
+
+    static final long GRANULARITY = 2000;
+
+    private static final int MAGIC = 0x44434331;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final File file;
+    private volatile boolean dirty;
+
+    /**
+     * @param file where to persist the cache between restarts, or <tt>null</tt>
+     */
+    public DirectoryCache(File file) {
+	this.file = file;
+    }
+
+    /**
+     * @return the remembered subdirectories if the directory is unchanged
+     *         since it was last listed, <tt>null</tt> if it must be listed
+     */
+    public List<String> unchanged(Path directory) throws IOException {
+	Entry entry = entries.get(directory.toString());
+	if (entry == null) {
+	    return null;
+	}
+	try {
+	    if (Files.getLastModifiedTime(directory).toMillis() == entry.modified) {
+		return entry.subdirectories;
+	    }
+	} catch (NoSuchFileException e) {
+	    // gone, let the caller find out when listing it
+	}
+	invalidate(directory.toString());
+	return null;
+    }
+
+    /**
+     * Records a complete listing of the directory.
+     *
+     * @param modified the modification time read before the listing started
+     */
+    public void put(Path directory, long modified, int count, List<String> subdirectories) {
+	String key = directory.toString();
+	if (System.currentTimeMillis() - modified < GRANULARITY) {
+	    invalidate(key);
+	    return;
+	}
+	entries.put(key, new Entry(modified, count, subdirectories));
+	dirty = true;
+    }
+
+    public void invalidate(String directory) {
+	if (entries.remove(directory) != null) {
+	    dirty = true;
+	}
+    }
+
+    /**
+     * @return the number of entries the directory held when it was last
+     *         listed, or <tt>-1</tt> if it is not cached
+     */
+    public int count(Path directory) {
+	Entry entry = entries.get(directory.toString());
+	return entry != null ? entry.count : -1;
+    }
+
+    public int size() {
+	return entries.size();
+    }
+
+    public boolean isDirty() {
+	return dirty;
+    }
+
+    public void load() throws IOException {
+	if (file == null || !file.isFile()) {
+	    return;
+	}
+	try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+	    if (in.readInt() != MAGIC) {
+		throw new IOException("Not a directory cache: " + file);
+	    }
+	    for (int n = in.readInt(); n > 0; n--) {
+		String key = in.readUTF();
+		long modified = in.readLong();
+		int count = in.readInt();
+		List<String> subdirectories = new ArrayList<String>();
+		for (int s = in.readInt(); s > 0; s--) {
+		    subdirectories.add(in.readUTF());
+		}
+		entries.put(key, new Entry(modified, count, subdirectories));
+	    }
+	}
+	dirty = false;
+    }
+
+    public void save() throws IOException {
+	if (file == null) {
+	    return;
+	}
+	dirty = false;
+	File parent = file.getAbsoluteFile().getParentFile();
+	if (parent != null) {
+	    Files.createDirectories(parent.toPath());
+	}
+	File tmp = new File(file.getPath() + ".tmp");
+	try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+	    List<Map.Entry<String, Entry>> snapshot = new ArrayList<Map.Entry<String, Entry>>(entries.entrySet());
+	    out.writeInt(MAGIC);
+	    out.writeInt(snapshot.size());
+	    for (Map.Entry<String, Entry> e : snapshot) {
+		out.writeUTF(e.getKey());
+		out.writeLong(e.getValue().modified);
+		out.writeInt(e.getValue().count);
+		out.writeInt(e.getValue().subdirectories.size());
+		for (String name : e.getValue().subdirectories) {
+		    out.writeUTF(name);
+		}
+	    }
+	}
+	Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static final class Entry {
+	final long modified;
+	final int count;
+	final List<String> subdirectories;
+
+	Entry(long modified, int count, List<String> subdirectories) {
+	    this.modified = modified;
+	    this.count = count;
+	    this.subdirectories = Collections.unmodifiableList(subdirectories);
+	}
+    }
+}
@@ -0,0 +1,48 @@
+package org.tesco.file.component;
+
+import java.io.File;
+import java.util.Map;
+
+import org.apache.camel.component.file.FileComponent;
+import org.apache.camel.component.file.GenericFileConfiguration;
+import org.apache.camel.component.file.GenericFileEndpoint;
+import org.apache.camel.util.FileUtil;
+import org.tesco.file.copy.BufferPool;
+
+/**
+ * The <tt>dir</tt> component. Accepts every option of the regular
+ * <tt>file</tt> component plus the consumer modes of {@link DirectoryEndpoint}.
+ */
+public class DirectoryComponent extends FileComponent {
+
+    private BufferPool bufferPool = new BufferPool(64 * 1024 * 1024);
+
+    public DirectoryComponent() {
+	setEndpointClass(DirectoryEndpoint.class);
+    }
+
+    public BufferPool getBufferPool() {
+	return bufferPool;
+    }
+
+    /**
+     * The pool the copy buffers of all endpoints come from.
+     */
+    public void setBufferPool(BufferPool bufferPool) {
+	this.bufferPool = bufferPool;
+    }
+
+    @Override
+    protected GenericFileEndpoint<File> buildFileEndpoint(String uri, String remaining, Map<String, Object> parameters) throws Exception {
+	File file = new File(remaining);
+
+	DirectoryEndpoint result = new DirectoryEndpoint(uri, this);
+	result.setFile(file);
+
+	GenericFileConfiguration config = new GenericFileConfiguration();
+	config.setDirectory(FileUtil.isAbsolute(file) ? file.getAbsolutePath() : file.getPath());
+	result.setConfiguration(config);
+
+	return result;
+    }
+}
@@ -0,0 +1,874 @@
+package org.tesco.file.component;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.camel.Component;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+import org.apache.camel.api.management.ManagedAttribute;
+import org.apache.camel.api.management.ManagedResource;
+import org.apache.camel.component.file.FileConsumer;
+import org.apache.camel.component.file.FileEndpoint;
+import org.apache.camel.component.file.GenericFile;
+import org.apache.camel.component.file.GenericFileExist;
+import org.apache.camel.component.file.GenericFileFilter;
+import org.apache.camel.component.file.GenericFileOperations;
+import org.apache.camel.component.file.GenericFileProducer;
+import org.apache.camel.processor.idempotent.MemoryIdempotentRepository;
+import org.apache.camel.spi.IdempotentRepository;
+import org.tesco.file.body.StreamingFileBody;
+import org.tesco.file.bundle.BundleFormat;
+import org.tesco.file.copy.BufferPool;
+import org.tesco.file.copy.ChannelCopier;
+import org.tesco.file.copy.ChecksumCopier;
+import org.tesco.file.copy.DeltaCopier;
+import org.tesco.file.copy.CheckpointJournal;
+import org.tesco.file.copy.FileCopier;
+import org.tesco.file.copy.MappedCopier;
+import org.tesco.file.copy.ParallelCopier;
+import org.tesco.file.copy.ResumableCopier;
+import org.tesco.file.copy.StreamCopier;
+import org.tesco.file.copy.ThresholdCopier;
+import org.tesco.file.dedup.BlobStore;
+import org.tesco.file.metrics.InFlightGauge;
+
+@ManagedResource(description = "Managed DirectoryEndpoint")
+public class DirectoryEndpoint extends FileEndpoint {
+
+    /** Files a consumer remembers as in flight, where the file component stops at 1000. */
+    private static final int IN_PROGRESS_SIZE = 1 << 20;
+
+    private ConsumerMode mode = ConsumerMode.POLL;
+    private long reconcileDelay = 60000;
+    private long settleDelay = 500;
+    private int partition;
+    private int partitions = 1;
+    private boolean idleBackoff;
+    private long maxIdleDelay = 60000;
+    private volatile AdaptivePollScheduler scheduler;
+    private boolean incremental;
+    private File directoryCacheFile;
+    private int readyPasses;
+    private boolean filtersInstalled;
+    private PriorityPolicy priority;
+    private String priorityWeights;
+    private boolean lanes;
+    private long laneQuantum = 1048576;
+    private String laneWeights;
+    private long maxInFlightBytes;
+    private int maxInFlightFiles;
+    private final InFlightGauge inFlight = new InFlightGauge();
+    private boolean inProgressRepositorySet;
+    private CopyStrategy copyStrategy = CopyStrategy.STREAM;
+    private boolean link;
+    private BundleFormat bundle;
+    private long bundleSize = 256 * 1024 * 1024;
+    private long bundleTimeout = 10000;
+    private boolean preallocate;
+    private boolean delta;
+    private int deltaBlockSize = 65536;
+    private long mappedThreshold;
+    private long mappedWindow = 128 * 1024 * 1024;
+    private long parallelThreshold;
+    private int parallelParts = 4;
+    private ExecutorService parallelExecutor;
+    private File checkpointJournal;
+    private long checkpointInterval = 64 * 1024 * 1024;
+    private CheckpointJournal journal;
+    private boolean groupCommit;
+    private int groupCommitSize = 256;
+    private long groupCommitDelay = 5;
+    private boolean atomicWrite;
+    private boolean checksum;
+    private boolean checksumSha256;
+    private String checksumManifest;
+    private File dedupStore;
+    private long dedupIndexCapacity = 1048576;
+    private BlobStore blobs;
+    private long orphanAge = 60000;
+    private boolean streamingBody;
+    private long maxHeapBodySize = 16 * 1024 * 1024;
+    private final String runId = String.format("%08x", new SecureRandom().nextInt());
+    private OrphanCleaner orphanCleaner;
+    private ExecutorService orphanExecutor;
+
+    public DirectoryEndpoint() {
+    }
+
+    public DirectoryEndpoint(String endpointUri, Component component) {
+	super(endpointUri, component);
+    }
+
+    @Override
+    public FileConsumer createConsumer(Processor processor) throws Exception {
+	if (mode == ConsumerMode.WATCH && (priority != null || getSorter() != null || getSortBy() != null || isShuffle())) {
+	    // files are handed over as their events settle, there is no listing to order
+	    throw new IllegalArgumentException("You cannot set both mode=watch and priority/sorter/sortBy/shuffle options");
+	}
+	if (mode == ConsumerMode.WATCH && lanes) {
+	    // settled files go straight to the route, never through the lanes
+	    throw new IllegalArgumentException("You cannot set both mode=watch and lanes");
+	}
+	if (!filtersInstalled) {
+	    installFilters();
+	}
+	if (mode == ConsumerMode.POLL && priority != null && getSorter() == null) {
+	    // the plain listing has every file at hand anyway, so sort it and cut it after
+	    setSorter(new PriorityComparator(priority, priorityWeights));
+	    setEagerMaxMessagesPerPoll(false);
+	}
+	if (!inProgressRepositorySet) {
+	    // the default forgets a file once 1000 newer ones are in flight and picks it up again,
+	    // which any asynchronous route holding exchanges open can reach
+	    setInProgressRepository(MemoryIdempotentRepository.memoryIdempotentRepository(IN_PROGRESS_SIZE));
+	}
+	FileConsumer consumer = super.createConsumer(processor);
+	if (idleBackoff) {
+	    scheduler = new AdaptivePollScheduler(consumer.getPollStrategy(), maxIdleDelay);
+	    consumer.setScheduler(scheduler);
+	    consumer.setPollStrategy(scheduler);
+	}
+	return consumer;
+    }
+
+    @Override
+    public GenericFileProducer<File> createProducer() throws Exception {
+	// validates the options
+	GenericFileProducer<File> producer = super.createProducer();
+	if (bundle != null) {
+	    return new BundleProducer(this);
+	}
+	if (atomicWrite && (getFileExist() == GenericFileExist.Append || getFileExist() == GenericFileExist.Move)) {
+	    throw new IllegalArgumentException("You cannot set both atomicWrite and fileExist=" + getFileExist());
+	}
+	if (atomicWrite && (getTempPrefix() != null || getTempFileName() != null)) {
+	    throw new IllegalArgumentException("You cannot set both atomicWrite and tempPrefix/tempFileName options");
+	}
+	if ((checksum || dedupStore != null) && (mappedThreshold > 0 || parallelThreshold > 0 || checkpointJournal != null)) {
+	    throw new IllegalArgumentException("You cannot set both checksum/dedupStore and mappedThreshold/parallelThreshold/checkpointJournal options");
+	}
+	if (parallelThreshold > 0 && !atomicWrite) {
+	    // the target has its full length from the start while the ranges fill in
+	    throw new IllegalArgumentException("The parallelThreshold option needs atomicWrite=true");
+	}
+	if (delta && (atomicWrite || checksum || dedupStore != null)) {
+	    throw new IllegalArgumentException("You cannot set both delta and atomicWrite/checksum/dedupStore options");
+	}
+	if (dedupStore != null && !atomicWrite) {
+	    // a written file shares its inode with the blob, so it must only ever be replaced, never written in place
+	    throw new IllegalArgumentException("The dedupStore option needs atomicWrite=true");
+	}
+	if (copyStrategy == CopyStrategy.STREAM && !link && !preallocate && !delta && mappedThreshold <= 0 && parallelThreshold <= 0 && checkpointJournal == null && !groupCommit && !atomicWrite
+		&& !checksum && dedupStore == null) {
+	    return producer;
+	}
+	BufferPool pool = ((DirectoryComponent) getComponent()).getBufferPool();
+	ChecksumCopier checksums = checksum || dedupStore != null ? new ChecksumCopier(pool, getBufferSize(), preallocate) : null;
+	return new DirectoryFileProducer(this, new DirectoryFileOperations(this, createCopier(), checksums, dedupStore != null ? getBlobs() : null));
+    }
+
+    private FileCopier createCopier() throws IOException {
+	BufferPool pool = ((DirectoryComponent) getComponent()).getBufferPool();
+	FileCopier copier = copyStrategy == CopyStrategy.CHANNEL ? new ChannelCopier(pool, getBufferSize(), preallocate)
+		: new StreamCopier(pool, getBufferSize(), preallocate);
+	// wrapped innermost first, so a larger engine takes the files from its own threshold up
+	if (checkpointJournal != null) {
+	    copier = new ThresholdCopier(copier, new ResumableCopier(getJournal(), checkpointInterval, pool, preallocate), checkpointInterval);
+	}
+	if (mappedThreshold > 0) {
+	    copier = new ThresholdCopier(copier, new MappedCopier(mappedWindow), mappedThreshold);
+	}
+	if (parallelThreshold > 0) {
+	    if (parallelExecutor == null) {
+		parallelExecutor = getCamelContext().getExecutorServiceManager().newFixedThreadPool(this, "ParallelCopy", parallelParts);
+	    }
+	    copier = new ThresholdCopier(copier, new ParallelCopier(parallelExecutor, parallelParts, pool, getBufferSize()), parallelThreshold);
+	}
+	if (delta) {
+	    copier = new DeltaCopier(copier, pool, deltaBlockSize);
+	}
+	return copier;
+    }
+
+    /**
+     * Whether the checkpoint journal holds the file as a partial copy to
+     * resume, so it must not be thrown away.
+     */
+    synchronized boolean isCheckpointed(File file) {
+	return journal != null && journal.isTarget(file.getAbsolutePath());
+    }
+
+    private synchronized CheckpointJournal getJournal() {
+	if (journal == null) {
+	    CheckpointJournal loaded = new CheckpointJournal(checkpointJournal);
+	    loaded.load();
+	    journal = loaded;
+	}
+	return journal;
+    }
+
+    private synchronized BlobStore getBlobs() throws Exception {
+	if (blobs == null) {
+	    BlobStore started = new BlobStore(dedupStore, dedupIndexCapacity);
+	    started.start();
+	    blobs = started;
+	}
+	return blobs;
+    }
+
+    @Override
+    public void setInProgressRepository(IdempotentRepository<String> inProgressRepository) {
+	super.setInProgressRepository(inProgressRepository);
+	inProgressRepositorySet = true;
+    }
+
+    @Override
+    public void configureMessage(GenericFile<File> file, Message message) {
+	super.configureMessage(file, message);
+	if (streamingBody) {
+	    message.setBody(new StreamingFileBody(file, maxHeapBodySize));
+	}
+    }
+
+    /**
+     * The hidden name a file is written under with <tt>atomicWrite</tt>.
+     */
+    String getTempName(String name) {
+	return OrphanCleaner.tempName(name, runId);
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+	super.doStart();
+	if (atomicWrite && orphanCleaner == null) {
+	    Set<String> resumable = checkpointJournal != null ? getJournal().getTargets() : Collections.<String> emptySet();
+	    orphanCleaner = new OrphanCleaner(getFile().toPath(), runId, orphanAge, resumable);
+	    orphanExecutor = getCamelContext().getExecutorServiceManager().newSingleThreadExecutor(this, "OrphanCleaner");
+	    orphanExecutor.submit(orphanCleaner);
+	}
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+	if (orphanCleaner != null) {
+	    orphanCleaner.stop();
+	    getCamelContext().getExecutorServiceManager().shutdownNow(orphanExecutor);
+	    orphanCleaner = null;
+	    orphanExecutor = null;
+	}
+	if (parallelExecutor != null) {
+	    getCamelContext().getExecutorServiceManager().shutdownNow(parallelExecutor);
+	    parallelExecutor = null;
+	}
+	synchronized (this) {
+	    if (blobs != null) {
+		blobs.stop();
+		blobs = null;
+	    }
+	}
+	super.doStop();
+    }
+
+    private void installFilters() {
+	GenericFileFilter<File> filter = getFilter();
+	if (partitions > 1) {
+	    filter = new PartitionFileFilter(filter, partition, partitions);
+	}
+	if (readyPasses > 1) {
+	    // forget files not seen for a good number of polls, even when backing off
+	    long expiry = Math.max(60000, 10 * getDelay());
+	    if (idleBackoff) {
+		expiry = Math.max(expiry, 2 * maxIdleDelay);
+	    }
+	    filter = new ReadinessFileFilter(filter, readyPasses, expiry);
+	}
+	if ((partitions > 1 || readyPasses > 1) && "markerFile".equals(getReadLock())) {
+	    // partitions never claim the same file and readiness tells complete ones,
+	    // either replaces the marker file default
+	    setReadLock("none");
+	}
+	setFilter(filter);
+	filtersInstalled = true;
+    }
+
+    @Override
+    protected FileConsumer newFileConsumer(Processor processor, GenericFileOperations<File> operations) {
+	switch (mode) {
+	case STREAM:
+	    return new StreamingFileConsumer(this, processor, operations);
+	case WATCH:
+	    return new WatchFileConsumer(this, processor, operations);
+	default:
+	    return new DirectoryFileConsumer(this, processor, operations);
+	}
+    }
+
+    public ConsumerMode getMode() {
+	return mode;
+    }
+
+    /**
+     * How new files are discovered: <tt>poll</tt> (default), <tt>stream</tt> or
+     * <tt>watch</tt>.
+     */
+    public void setMode(ConsumerMode mode) {
+	this.mode = mode;
+    }
+
+    public long getReconcileDelay() {
+	return reconcileDelay;
+    }
+
+    /**
+     * In watch mode, milliseconds between full scans that pick up any file
+     * whose event was missed or dropped.
+     */
+    public void setReconcileDelay(long reconcileDelay) {
+	this.reconcileDelay = reconcileDelay;
+    }
+
+    public long getSettleDelay() {
+	return settleDelay;
+    }
+
+    /**
+     * In watch mode, milliseconds a file must go without further events
+     * before it is picked up, so a writer still filling it is left alone.
+     */
+    public void setSettleDelay(long settleDelay) {
+	this.settleDelay = settleDelay;
+    }
+
+    public int getPartition() {
+	return partition;
+    }
+
+    /**
+     * The partition, from 0 to <tt>partitions - 1</tt>, this consumer owns.
+     */
+    public void setPartition(int partition) {
+	this.partition = partition;
+    }
+
+    public int getPartitions() {
+	return partitions;
+    }
+
+    /**
+     * Number of consumers sharing the directory. Each only takes the files
+     * whose name hashes into its own partition, so the default marker file
+     * read lock is not needed and is dropped.
+     */
+    public void setPartitions(int partitions) {
+	this.partitions = partitions;
+    }
+
+    public boolean isIdleBackoff() {
+	return idleBackoff;
+    }
+
+    /**
+     * Double the poll delay after every empty poll, up to
+     * <tt>maxIdleDelay</tt>, and return to <tt>delay</tt> once files arrive.
+     */
+    public void setIdleBackoff(boolean idleBackoff) {
+	this.idleBackoff = idleBackoff;
+    }
+
+    public long getMaxIdleDelay() {
+	return maxIdleDelay;
+    }
+
+    /**
+     * Upper bound in milliseconds of the poll delay when idle.
+     */
+    public void setMaxIdleDelay(long maxIdleDelay) {
+	this.maxIdleDelay = maxIdleDelay;
+    }
+
+    public boolean isIncremental() {
+	return incremental;
+    }
+
+    /**
+     * In stream and watch mode, skip listing directories whose modification
+     * time has not changed since they were last listed.
+     */
+    public void setIncremental(boolean incremental) {
+	this.incremental = incremental;
+    }
+
+    public File getDirectoryCacheFile() {
+	return directoryCacheFile;
+    }
+
+    /**
+     * Where to keep the directory modification times of an incremental scan,
+     * so a restart does not begin with a full walk.
+     */
+    public void setDirectoryCacheFile(File directoryCacheFile) {
+	this.directoryCacheFile = directoryCacheFile;
+    }
+
+    public int getReadyPasses() {
+	return readyPasses;
+    }
+
+    /**
+     * Only pick up a file once its size and modification time were the same
+     * on this many consecutive polls, in watch mode settle checks. Replaces
+     * the default marker file read lock, as no other lock is needed.
+     */
+    public void setReadyPasses(int readyPasses) {
+	this.readyPasses = readyPasses;
+    }
+
+    public PriorityPolicy getPriority() {
+	return priority;
+    }
+
+    /**
+     * Take the <tt>maxMessagesPerPoll</tt> most urgent files on each poll:
+     * <tt>oldest</tt>, <tt>smallest</tt> or <tt>pattern</tt>. Stream mode
+     * selects them with a bounded heap, poll mode sorts its full listing.
+     * Not available in watch mode.
+     */
+    public void setPriority(PriorityPolicy priority) {
+	this.priority = priority;
+    }
+
+    public String getPriorityWeights() {
+	return priorityWeights;
+    }
+
+    /**
+     * Weights for <tt>priority=pattern</tt>, as <tt>regex:weight</tt> pairs
+     * separated by <tt>;</tt>. Higher weights go first.
+     */
+    public void setPriorityWeights(String priorityWeights) {
+	this.priorityWeights = priorityWeights;
+    }
+
+    public boolean isLanes() {
+	return lanes;
+    }
+
+    /**
+     * In stream mode, serve every first-level subdirectory as a lane
+     * of its own, in deficit round robin by bytes, so one busy sender cannot
+     * starve the rest. Needs <tt>recursive=true</tt>.
+     */
+    public void setLanes(boolean lanes) {
+	this.lanes = lanes;
+    }
+
+    public long getLaneQuantum() {
+	return laneQuantum;
+    }
+
+    /**
+     * Bytes a lane may take on each turn, times its weight.
+     */
+    public void setLaneQuantum(long laneQuantum) {
+	this.laneQuantum = laneQuantum;
+    }
+
+    public String getLaneWeights() {
+	return laneWeights;
+    }
+
+    /**
+     * Weights of the lanes, as <tt>subdirectory:weight</tt> pairs separated by
+     * <tt>;</tt>. Lanes not listed weigh 1, and weights must be positive.
+     */
+    public void setLaneWeights(String laneWeights) {
+	this.laneWeights = laneWeights;
+    }
+
+    public CopyStrategy getCopyStrategy() {
+	return copyStrategy;
+    }
+
+    /**
+     * How the producer writes a file body: <tt>stream</tt> (default) or
+     * <tt>channel</tt>.
+     */
+    public void setCopyStrategy(CopyStrategy copyStrategy) {
+	this.copyStrategy = copyStrategy;
+    }
+
+    public boolean isLink() {
+	return link;
+    }
+
+    /**
+     * When the consumed file and the target are on the same file store, move
+     * the file by rename, if the consumer deletes it, or by hard link, if it
+     * moves it, instead of copying. Files consumed with <tt>noop</tt> are still
+     * copied. A hard link shares its content with the moved input, so a change
+     * to either shows in both.
+     */
+    public void setLink(boolean link) {
+	this.link = link;
+    }
+
+    public BundleFormat getBundle() {
+	return bundle;
+    }
+
+    /**
+     * Pack files into rolling <tt>tar</tt> or <tt>zip</tt> bundles, each with
+     * an index of where its entries start, instead of writing them one by one.
+     * The other producer options do not apply.
+     */
+    public void setBundle(BundleFormat bundle) {
+	this.bundle = bundle;
+    }
+
+    public long getBundleSize() {
+	return bundleSize;
+    }
+
+    /**
+     * Bytes at which a bundle is closed.
+     */
+    public void setBundleSize(long bundleSize) {
+	this.bundleSize = bundleSize;
+    }
+
+    public long getBundleTimeout() {
+	return bundleTimeout;
+    }
+
+    /**
+     * Milliseconds after which a bundle is closed however small, which bounds
+     * how long its exchanges wait to complete.
+     */
+    public void setBundleTimeout(long bundleTimeout) {
+	this.bundleTimeout = bundleTimeout;
+    }
+
+    public boolean isPreallocate() {
+	return preallocate;
+    }
+
+    /**
+     * Size every copied file to its source before writing it and trim it to
+     * the bytes copied afterwards, instead of growing it write by write.
+     * Mapped and parallel copies always do.
+     */
+    public void setPreallocate(boolean preallocate) {
+	this.preallocate = preallocate;
+    }
+
+    public boolean isDelta() {
+	return delta;
+    }
+
+    /**
+     * Update a file that already exists in place, writing only the blocks
+     * that changed. Readers may see the update half done, so it cannot be
+     * combined with <tt>atomicWrite</tt>.
+     */
+    public void setDelta(boolean delta) {
+	this.delta = delta;
+    }
+
+    public int getDeltaBlockSize() {
+	return deltaBlockSize;
+    }
+
+    /**
+     * Bytes compared, and written if they differ, at a time.
+     */
+    public void setDeltaBlockSize(int deltaBlockSize) {
+	this.deltaBlockSize = deltaBlockSize;
+    }
+
+    public long getMappedThreshold() {
+	return mappedThreshold;
+    }
+
+    /**
+     * Copy files of at least this many bytes window by window through memory
+     * mappings. 0, the default, never does. Takes precedence over
+     * <tt>checkpointJournal</tt>.
+     */
+    public void setMappedThreshold(long mappedThreshold) {
+	this.mappedThreshold = mappedThreshold;
+    }
+
+    public long getMappedWindow() {
+	return mappedWindow;
+    }
+
+    /**
+     * Bytes mapped at a time when copying through memory mappings.
+     */
+    public void setMappedWindow(long mappedWindow) {
+	this.mappedWindow = mappedWindow;
+    }
+
+    public long getParallelThreshold() {
+	return parallelThreshold;
+    }
+
+    /**
+     * Copy files of at least this many bytes in <tt>parallelParts</tt> ranges
+     * at once. 0, the default, never does. Needs <tt>atomicWrite=true</tt>.
+     * Takes precedence over <tt>mappedThreshold</tt> and
+     * <tt>checkpointJournal</tt>.
+     */
+    public void setParallelThreshold(long parallelThreshold) {
+	this.parallelThreshold = parallelThreshold;
+    }
+
+    public int getParallelParts() {
+	return parallelParts;
+    }
+
+    /**
+     * Ranges a large file is split into, and workers copying them.
+     */
+    public void setParallelParts(int parallelParts) {
+	this.parallelParts = parallelParts;
+    }
+
+    public File getCheckpointJournal() {
+	return checkpointJournal;
+    }
+
+    /**
+     * Where to record the progress of large copies, so a copy cut short by a
+     * crash resumes from its last checkpoint. Applies to files of at least
+     * <tt>checkpointInterval</tt> bytes, up to <tt>mappedThreshold</tt> or
+     * <tt>parallelThreshold</tt> if set, from which those engines copy
+     * without checkpoints.
+     */
+    public void setCheckpointJournal(File checkpointJournal) {
+	this.checkpointJournal = checkpointJournal;
+    }
+
+    public long getCheckpointInterval() {
+	return checkpointInterval;
+    }
+
+    /**
+     * Bytes copied between checkpoints. Files smaller than this are not
+     * checkpointed.
+     */
+    public void setCheckpointInterval(long checkpointInterval) {
+	this.checkpointInterval = checkpointInterval;
+    }
+
+    public boolean isGroupCommit() {
+	return groupCommit;
+    }
+
+    /**
+     * Sync every written file and its directory to disk before the exchange
+     * completes, sharing each sync among the files written meanwhile.
+     */
+    public void setGroupCommit(boolean groupCommit) {
+	this.groupCommit = groupCommit;
+    }
+
+    public int getGroupCommitSize() {
+	return groupCommitSize;
+    }
+
+    /**
+     * Most files synced in one group.
+     */
+    public void setGroupCommitSize(int groupCommitSize) {
+	this.groupCommitSize = groupCommitSize;
+    }
+
+    public long getGroupCommitDelay() {
+	return groupCommitDelay;
+    }
+
+    /**
+     * Milliseconds a group waits for more files after its first.
+     */
+    public void setGroupCommitDelay(long groupCommitDelay) {
+	this.groupCommitDelay = groupCommitDelay;
+    }
+
+    public boolean isAtomicWrite() {
+	return atomicWrite;
+    }
+
+    /**
+     * Write every file under a hidden temp name and rename it into place once
+     * complete, so readers never see a partial file. Temp files left by a
+     * crash are deleted in the background after startup.
+     */
+    public void setAtomicWrite(boolean atomicWrite) {
+	this.atomicWrite = atomicWrite;
+    }
+
+    public boolean isChecksum() {
+	return checksum;
+    }
+
+    /**
+     * Compute the CRC32C of every file while it is copied, check it against a
+     * <tt>CamelFileChecksumCrc32c</tt> header when there is one, and record it
+     * next to the file. Copies then go through a buffer, as transfers and
+     * mappings never show the bytes.
+     */
+    public void setChecksum(boolean checksum) {
+	this.checksum = checksum;
+    }
+
+    public boolean isChecksumSha256() {
+	return checksumSha256;
+    }
+
+    /**
+     * With <tt>checksum</tt>, compute the SHA-256 as well, checked against a
+     * <tt>CamelFileChecksumSha256</tt> header.
+     */
+    public void setChecksumSha256(boolean checksumSha256) {
+	this.checksumSha256 = checksumSha256;
+    }
+
+    public String getChecksumManifest() {
+	return checksumManifest;
+    }
+
+    /**
+     * Append the checksums to this manifest in the file's directory instead of
+     * writing a sidecar per file.
+     */
+    public void setChecksumManifest(String checksumManifest) {
+	this.checksumManifest = checksumManifest;
+    }
+
+    public File getDedupStore() {
+	return dedupStore;
+    }
+
+    /**
+     * Keep every distinct content once in this directory, named after its
+     * SHA-256, and write files as hard links to it. Must be on the same file
+     * store as the output, and needs <tt>atomicWrite</tt> so a file written
+     * again replaces its link instead of rewriting the blob; duplicates share
+     * the modification time and permissions of the first file stored.
+     */
+    public void setDedupStore(File dedupStore) {
+	this.dedupStore = dedupStore;
+    }
+
+    public long getDedupIndexCapacity() {
+	return dedupIndexCapacity;
+    }
+
+    /**
+     * Initial number of hashes the index of the dedup store holds before it
+     * grows.
+     */
+    public void setDedupIndexCapacity(long dedupIndexCapacity) {
+	this.dedupIndexCapacity = dedupIndexCapacity;
+    }
+
+    public long getOrphanAge() {
+	return orphanAge;
+    }
+
+    /**
+     * Milliseconds a temp file of an earlier run must have been left untouched
+     * before it is deleted as an orphan.
+     */
+    public void setOrphanAge(long orphanAge) {
+	this.orphanAge = orphanAge;
+    }
+
+    public boolean isStreamingBody() {
+	return streamingBody;
+    }
+
+    /**
+     * Hand files to the route as a {@link StreamingFileBody}, which reads as a
+     * stream, channel or mapping and never loads a large file onto the heap.
+     */
+    public void setStreamingBody(boolean streamingBody) {
+	this.streamingBody = streamingBody;
+    }
+
+    public long getMaxHeapBodySize() {
+	return maxHeapBodySize;
+    }
+
+    /**
+     * Largest streaming body that still converts to a <tt>byte[]</tt> or
+     * <tt>String</tt>.
+     */
+    public void setMaxHeapBodySize(long maxHeapBodySize) {
+	this.maxHeapBodySize = maxHeapBodySize;
+    }
+
+    public long getMaxInFlightBytes() {
+	return maxInFlightBytes;
+    }
+
+    /**
+     * Stop claiming files while this many bytes are still being routed.
+     */
+    public void setMaxInFlightBytes(long maxInFlightBytes) {
+	this.maxInFlightBytes = maxInFlightBytes;
+    }
+
+    public int getMaxInFlightFiles() {
+	return maxInFlightFiles;
+    }
+
+    /**
+     * Claim no more files per poll than leaves at most this many being routed.
+     */
+    public void setMaxInFlightFiles(int maxInFlightFiles) {
+	this.maxInFlightFiles = maxInFlightFiles;
+    }
+
+    public InFlightGauge getInFlight() {
+	return inFlight;
+    }
+
+    @ManagedAttribute(description = "Files being routed")
+    public long getInFlightFiles() {
+	return inFlight.getFiles();
+    }
+
+    @ManagedAttribute(description = "Bytes being routed")
+    public long getInFlightBytes() {
+	return inFlight.getBytes();
+    }
+
+    @ManagedAttribute(description = "Files written as a link to content already in the dedupStore")
+    public synchronized long getDedupFiles() {
+	return blobs != null ? blobs.getDuplicates() : 0;
+    }
+
+    @ManagedAttribute(description = "Bytes not stored again thanks to the dedupStore")
+    public synchronized long getDedupBytes() {
+	return blobs != null ? blobs.getSavedBytes() : 0;
+    }
+
+    @ManagedAttribute(description = "Polls that found no files, when idleBackoff is enabled")
+    public long getIdlePolls() {
+	AdaptivePollScheduler current = scheduler;
+	return current != null ? current.getIdlePolls() : 0;
+    }
+
+    @ManagedAttribute(description = "Millis until the next poll, when idleBackoff is enabled")
+    public long getCurrentPollDelay() {
+	AdaptivePollScheduler current = scheduler;
+	return current != null ? current.getCurrentDelay() : getDelay();
+    }
+}
@@ -0,0 +1,137 @@
+package org.tesco.file.component;
+
+import java.io.File;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+import org.apache.camel.component.file.FileConsumer;
+import org.apache.camel.component.file.GenericFile;
+import org.apache.camel.component.file.GenericFileOperations;
+import org.apache.camel.processor.DelegateAsyncProcessor;
+import org.tesco.file.body.StreamingFileBody;
+import org.tesco.file.metrics.InFlightGauge;
+
+/**
+ * Base consumer of the <tt>dir</tt> component. Tracks the files and bytes in
+ * flight in the route and, when <tt>maxInFlightFiles</tt> or
+ * <tt>maxInFlightBytes</tt> is set, sizes every poll to the room left in
+ * that budget: a poll claims no more files than the route has room for, stops
+ * claiming once the byte budget fills up, and is skipped while the route is
+ * still full.
+ */
+public class DirectoryFileConsumer extends FileConsumer {
+
+    private final InFlightGauge inFlight;
+    private final long maxInFlightBytes;
+    private final int maxInFlightFiles;
+    private int configuredMaxMessagesPerPoll;
+    private volatile boolean throttled;
+    private AsyncProcessor processor;
+
+    public DirectoryFileConsumer(DirectoryEndpoint endpoint, Processor processor, GenericFileOperations<File> operations) {
+	super(endpoint, processor, operations);
+	this.inFlight = endpoint.getInFlight();
+	this.maxInFlightBytes = endpoint.getMaxInFlightBytes();
+	this.maxInFlightFiles = endpoint.getMaxInFlightFiles();
+    }
+
+    /**
+     * Whether the last poll was skipped or cut short because the route had no
+     * room for more files.
+     */
+    public boolean isThrottled() {
+	return throttled;
+    }
+
+    @Override
+    public void setMaxMessagesPerPoll(int maxMessagesPerPoll) {
+	this.configuredMaxMessagesPerPoll = maxMessagesPerPoll;
+	super.setMaxMessagesPerPoll(maxMessagesPerPoll);
+    }
+
+    @Override
+    protected boolean prePollCheck() throws Exception {
+	throttled = false;
+	if (maxInFlightFiles <= 0 && maxInFlightBytes <= 0) {
+	    return true;
+	}
+
+	int batch = configuredMaxMessagesPerPoll;
+	if (maxInFlightFiles > 0) {
+	    int room = (int) Math.max(0, maxInFlightFiles - inFlight.getFiles());
+	    batch = batch > 0 ? Math.min(batch, room) : room;
+	}
+	if (batch == 0 || isOverByteBudget()) {
+	    log.debug("Skipping poll as {} files and {} bytes are still in flight", inFlight.getFiles(), inFlight.getBytes());
+	    throttled = true;
+	    return false;
+	}
+	maxMessagesPerPoll = batch;
+	return true;
+    }
+
+    @Override
+    public boolean isBatchAllowed() {
+	if (isOverByteBudget()) {
+	    throttled = true;
+	    return false;
+	}
+	return super.isBatchAllowed();
+    }
+
+    /**
+     * Whether the route has room for one more file, for files handed over
+     * outside of a poll.
+     */
+    protected boolean isRoomForFile() {
+	if (maxInFlightFiles > 0 && inFlight.getFiles() >= maxInFlightFiles) {
+	    throttled = true;
+	    return false;
+	}
+	return isBatchAllowed();
+    }
+
+    private boolean isOverByteBudget() {
+	return maxInFlightBytes > 0 && inFlight.getBytes() >= maxInFlightBytes;
+    }
+
+    @Override
+    protected void updateFileHeaders(GenericFile<File> file, Message message) {
+	super.updateFileHeaders(file, message);
+	DirectoryEndpoint directory = (DirectoryEndpoint) getEndpoint();
+	if (directory.isStreamingBody() && !(message.getBody() instanceof StreamingFileBody)) {
+	    // a preMove rename binds a new message to the exchange, with the renamed file as its body
+	    message.setBody(new StreamingFileBody(file, directory.getMaxHeapBodySize()));
+	}
+    }
+
+    @Override
+    public Processor getProcessor() {
+	return getAsyncProcessor();
+    }
+
+    @Override
+    public synchronized AsyncProcessor getAsyncProcessor() {
+	if (processor == null) {
+	    processor = new DelegateAsyncProcessor(super.getAsyncProcessor()) {
+		@Override
+		public boolean process(Exchange exchange, final AsyncCallback callback) {
+		    Long length = exchange.getIn().getHeader(Exchange.FILE_LENGTH, Long.class);
+		    final long bytes = length != null ? length : 0;
+		    inFlight.begin(bytes);
+		    return super.process(exchange, new AsyncCallback() {
+			@Override
+			public void done(boolean doneSync) {
+			    inFlight.end(bytes);
+			    callback.done(doneSync);
+			}
+		    });
+		}
+	    };
+	}
+	return processor;
+    }
+}
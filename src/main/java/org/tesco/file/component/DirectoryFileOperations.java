@@ -0,0 +1,339 @@
+package org.tesco.file.component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Date;
+import java.util.Set;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.WrappedFile;
+import org.apache.camel.component.file.FileComponent;
+import org.apache.camel.component.file.FileOperations;
+import org.apache.camel.component.file.GenericFile;
+import org.apache.camel.component.file.GenericFileEndpoint;
+import org.apache.camel.component.file.GenericFileExist;
+import org.apache.camel.component.file.GenericFileOperationFailedException;
+import org.apache.camel.util.ObjectHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tesco.file.checksum.ChecksumManifest;
+import org.tesco.file.checksum.ContentChecksum;
+import org.tesco.file.copy.ChecksumCopier;
+import org.tesco.file.copy.FileCopier;
+import org.tesco.file.dedup.BlobStore;
+
+/**
+ * File operations that hand a file body to a {@link FileCopier} instead of
+ * the stream copy of the <tt>file</tt> component, or with <tt>link=true</tt>
+ * move it by rename or hard link when it stays on the same file store. With
+ * <tt>atomicWrite=true</tt> every file is written under a hidden temp name
+ * first and renamed into place when complete; a consumed file that was
+ * renamed into it is moved back if the write fails. With <tt>checksum=true</tt>
+ * the content is checksummed while it is copied, checked against checksums
+ * the exchange came with and recorded in sidecars or a manifest, and with a
+ * <tt>dedupStore</tt> each distinct content is kept once. Bodies that
+ * are not files, a charset, a local work file or <tt>fileExist=Append</tt>
+ * or <tt>Move</tt> still go the regular way, and are read back once to
+ * checksum them.
+ */
+public class DirectoryFileOperations extends FileOperations {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DirectoryFileOperations.class);
+
+    /** The consumed file {@link #link} renamed to the target, until the write completes. */
+    private static final String MOVED_SOURCE = "CamelDirectoryMovedSource";
+
+    private final DirectoryEndpoint endpoint;
+    private final FileCopier copier;
+    private final ChecksumCopier checksums;
+    private final ChecksumManifest manifest;
+    private final BlobStore blobs;
+
+    /**
+     * @param checksums copier for <tt>checksum=true</tt> or a <tt>dedupStore</tt>,
+     *            <tt>null</tt> otherwise
+     * @param blobs the store of a <tt>dedupStore</tt>, <tt>null</tt> without
+     */
+    public DirectoryFileOperations(DirectoryEndpoint endpoint, FileCopier copier, ChecksumCopier checksums, BlobStore blobs) {
+	super(endpoint);
+	this.endpoint = endpoint;
+	this.copier = copier;
+	this.checksums = checksums;
+	this.manifest = new ChecksumManifest(endpoint.getChecksumManifest());
+	this.blobs = blobs;
+    }
+
+    @Override
+    public boolean storeFile(String fileName, Exchange exchange) throws GenericFileOperationFailedException {
+	try {
+	    if (!endpoint.isAtomicWrite()) {
+		record(new File(fileName), write(fileName, exchange), exchange);
+	    } else {
+		storeAtomically(new File(fileName).getAbsoluteFile(), exchange);
+	    }
+	    return true;
+	} finally {
+	    exchange.removeProperty(MOVED_SOURCE);
+	}
+    }
+
+    private void storeAtomically(File target, Exchange exchange) throws GenericFileOperationFailedException {
+	if (target.exists()) {
+	    if (endpoint.getFileExist() == GenericFileExist.Ignore) {
+		LOG.trace("An existing file already exists: {}. Ignore and do not override it.", target);
+		return;
+	    } else if (endpoint.getFileExist() == GenericFileExist.Fail) {
+		throw new GenericFileOperationFailedException("File already exist: " + target + ". Cannot write new file.");
+	    }
+	}
+	// readers only ever see the complete file under its real name
+	File temp = new File(target.getParentFile(), endpoint.getTempName(target.getName()));
+	try {
+	    ContentChecksum checksum = write(temp.getPath(), exchange);
+	    if (endpoint.isGroupCommit()) {
+		// the group commit only syncs after the rename, when a crash could
+		// already have left a partial file under the real name
+		try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.READ)) {
+		    channel.force(true);
+		}
+	    }
+	    Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+	    record(target, checksum, exchange);
+	} catch (IOException e) {
+	    throw new GenericFileOperationFailedException("Cannot store file: " + target, e);
+	} finally {
+	    if (temp.exists() && !restoreSource(temp, exchange)) {
+		if (endpoint.isCheckpointed(temp)) {
+		    LOG.debug("Keeping temp file {} to resume its copy from the last checkpoint", temp);
+		} else if (!temp.delete()) {
+		    LOG.debug("Cannot delete temp file {}, it is left for the orphan cleanup", temp);
+		}
+	    }
+	}
+    }
+
+    /**
+     * @return the checksum of the file written, or <tt>null</tt> if checksums
+     *         and dedup are off or nothing was written
+     */
+    private ContentChecksum write(String fileName, Exchange exchange) throws GenericFileOperationFailedException {
+	File target = new File(fileName);
+	if (target.exists()) {
+	    if (endpoint.getFileExist() == GenericFileExist.Ignore) {
+		LOG.trace("An existing file already exists: {}. Ignore and do not override it.", target);
+		return null;
+	    } else if (endpoint.getFileExist() == GenericFileExist.Fail) {
+		throw new GenericFileOperationFailedException("File already exist: " + target + ". Cannot write new file.");
+	    }
+	}
+
+	ContentChecksum checksum = checksums != null ? new ContentChecksum(endpoint.isChecksumSha256() || blobs != null) : null;
+	File source = sourceFile(exchange);
+	boolean regular = source == null || endpoint.getFileExist() == GenericFileExist.Append || endpoint.getFileExist() == GenericFileExist.Move;
+	try {
+	    if (regular) {
+		super.storeFile(fileName, exchange);
+		if (checksum != null) {
+		    // not a file, so the bytes went through the file component
+		    checksums.read(target, checksum);
+		}
+	    } else if (endpoint.isLink() && link(exchange, source, target)) {
+		LOG.trace("Linked: {} to: {}", source, target);
+		if (checksum != null) {
+		    checksums.read(target, checksum);
+		}
+	    } else {
+		long length = checksum != null ? checksums.copy(source, target, checksum) : copier.copy(source, target);
+		LOG.trace("Copied {} bytes from: {} to: {}", length, source, target);
+	    }
+	    if (checksum != null) {
+		verify(target, checksum, exchange);
+	    }
+	    if (!regular) {
+		keepLastModified(exchange, target);
+		if (ObjectHelper.isNotEmpty(endpoint.getChmod())) {
+		    Set<PosixFilePermission> permissions = endpoint.getPermissions();
+		    if (!permissions.isEmpty()) {
+			Files.setPosixFilePermissions(target.toPath(), permissions);
+		    }
+		}
+	    }
+	    if (blobs != null) {
+		// last, as from here on the file may be the stored blob itself
+		dedup(target, checksum);
+	    }
+	} catch (IOException e) {
+	    restoreSource(target, exchange);
+	    throw new GenericFileOperationFailedException("Cannot store file: " + target, e);
+	}
+	return checksum;
+    }
+
+    private void dedup(File target, ContentChecksum checksum) {
+	try {
+	    if (blobs.store(target, checksum.getSha256())) {
+		LOG.trace("Deduplicated: {} of {} bytes", target, checksum.getLength());
+	    }
+	} catch (IOException e) {
+	    // the file is written all the same, only not deduplicated
+	    LOG.warn("Cannot keep {} in the dedup store due {}", target, e.getMessage());
+	}
+    }
+
+    /**
+     * Compares the checksums with those the exchange came with, if any, and
+     * throws the file away when they differ, or moves it back if it is the
+     * consumed file itself.
+     */
+    private void verify(File target, ContentChecksum checksum, Exchange exchange) throws GenericFileOperationFailedException {
+	String crc32c = exchange.getIn().getHeader(ContentChecksum.CRC32C, String.class);
+	String sha256 = exchange.getIn().getHeader(ContentChecksum.SHA256, String.class);
+	String mismatch = null;
+	if (crc32c != null && !crc32c.trim().equalsIgnoreCase(checksum.getCrc32c())) {
+	    mismatch = "CRC32C " + checksum.getCrc32c() + ", expected " + crc32c;
+	} else if (sha256 != null && checksum.getSha256() != null && !sha256.trim().equalsIgnoreCase(checksum.getSha256())) {
+	    mismatch = "SHA-256 " + checksum.getSha256() + ", expected " + sha256;
+	}
+	if (mismatch != null) {
+	    // a consumed file linked in by rename is the only copy, so it goes back instead
+	    if (!restoreSource(target, exchange) && !target.delete()) {
+		LOG.warn("Cannot delete file {} that failed its checksum", target);
+	    }
+	    throw new GenericFileOperationFailedException("Checksum mismatch for file: " + target + ", " + mismatch);
+	}
+    }
+
+    /**
+     * Writes the sidecars or manifest line of a file in place, and sets its
+     * checksums on the exchange.
+     */
+    private void record(File target, ContentChecksum checksum, Exchange exchange) throws GenericFileOperationFailedException {
+	if (checksum == null || !endpoint.isChecksum()) {
+	    return;
+	}
+	exchange.getIn().setHeader(ContentChecksum.CRC32C, checksum.getCrc32c());
+	if (checksum.getSha256() != null) {
+	    exchange.getIn().setHeader(ContentChecksum.SHA256, checksum.getSha256());
+	}
+	try {
+	    manifest.record(target.getAbsoluteFile(), checksum);
+	} catch (IOException e) {
+	    throw new GenericFileOperationFailedException("Cannot record checksum of file: " + target, e);
+	}
+    }
+
+    /**
+     * @return the file the body refers to, or <tt>null</tt> if the body has
+     *         to be written the regular way
+     */
+    private File sourceFile(Exchange exchange) {
+	if (endpoint.getCharset() != null) {
+	    return null;
+	}
+	File local = exchange.getIn().getHeader(Exchange.FILE_LOCAL_WORK_PATH, File.class);
+	if (local != null && local.exists()) {
+	    // renaming the local work file beats any copy
+	    return null;
+	}
+	Object body = exchange.getIn().getBody();
+	if (body instanceof WrappedFile) {
+	    body = ((WrappedFile<?>) body).getFile();
+	}
+	if (body instanceof File && ((File) body).isFile()) {
+	    return (File) body;
+	}
+	return null;
+    }
+
+    /**
+     * Moves the consumed file to the target without copying, when both are on
+     * the same file store and the consumer takes the file out of its directory
+     * anyway. A consumer that deletes it finds it already gone; one that moves
+     * it keeps a second link to the same content.
+     *
+     * @return <tt>false</tt> if the file has to be copied
+     */
+    private boolean link(Exchange exchange, File source, File target) {
+	GenericFile<?> consumed = exchange.getProperty(FileComponent.FILE_EXCHANGE_FILE, GenericFile.class);
+	if (!(exchange.getFromEndpoint() instanceof GenericFileEndpoint) || consumed == null
+		|| !source.getAbsoluteFile().equals(new File(consumed.getAbsoluteFilePath()).getAbsoluteFile())) {
+	    return false;
+	}
+	GenericFileEndpoint<?> from = (GenericFileEndpoint<?>) exchange.getFromEndpoint();
+	if (from.isNoop()) {
+	    // the input stays and may be rewritten, so the output needs its own copy
+	    return false;
+	}
+	try {
+	    if (!isSameFileStore(source, target)) {
+		return false;
+	    }
+	    if (from.isDelete()) {
+		Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		exchange.setProperty(MOVED_SOURCE, source);
+	    } else {
+		Files.deleteIfExists(target.toPath());
+		Files.createLink(target.toPath(), source.toPath());
+	    }
+	    return true;
+	} catch (IOException | UnsupportedOperationException e) {
+	    LOG.debug("Cannot link {} to {}, copying instead due {}", source, target, e.getMessage());
+	    return false;
+	}
+    }
+
+    /**
+     * Moves a consumed file that {@link #link} renamed to <tt>file</tt> back
+     * to where it came from, as it is the only copy of the input, so a failed
+     * write leaves it for the consumer to roll back.
+     *
+     * @return <tt>false</tt> if <tt>file</tt> is not the consumed file and
+     *         may be deleted
+     */
+    private boolean restoreSource(File file, Exchange exchange) {
+	File source = exchange.getProperty(MOVED_SOURCE, File.class);
+	if (source == null) {
+	    return false;
+	}
+	try {
+	    Files.move(file.toPath(), source.toPath(), StandardCopyOption.ATOMIC_MOVE);
+	    exchange.removeProperty(MOVED_SOURCE);
+	    LOG.debug("Moved {} back to {} after a failed write", file, source);
+	} catch (IOException e) {
+	    LOG.warn("Cannot move {} back to {}, it is left in place due {}", file, source, e.getMessage());
+	}
+	return true;
+    }
+
+    private static boolean isSameFileStore(File source, File target) throws IOException {
+	Path directory = target.getAbsoluteFile().getParentFile().toPath();
+	try {
+	    // a stat each, where looking up the file store reads the mount table
+	    return Files.getAttribute(source.toPath(), "unix:dev").equals(Files.getAttribute(directory, "unix:dev"));
+	} catch (UnsupportedOperationException e) {
+	    return Files.getFileStore(source.toPath()).equals(Files.getFileStore(directory));
+	}
+    }
+
+    private void keepLastModified(Exchange exchange, File target) {
+	if (!endpoint.isKeepLastModified()) {
+	    return;
+	}
+	Long last;
+	Date date = exchange.getIn().getHeader(Exchange.FILE_LAST_MODIFIED, Date.class);
+	if (date != null) {
+	    last = date.getTime();
+	} else {
+	    last = exchange.getIn().getHeader(Exchange.FILE_LAST_MODIFIED, Long.class);
+	}
+	if (last != null) {
+	    target.setLastModified(last);
+	}
+    }
+}
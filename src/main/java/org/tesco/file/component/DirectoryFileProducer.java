@@ -0,0 +1,72 @@
+package org.tesco.file.component;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.Exchange;
+import org.apache.camel.component.file.GenericFileOperations;
+import org.apache.camel.component.file.GenericFileProducer;
+
+/**
+ * Producer of the <tt>dir</tt> component, writing through
+ * {@link DirectoryFileOperations}. With <tt>groupCommit=true</tt> an exchange
+ * completes only once a {@link GroupCommitter} has synced its file to disk,
+ * while the caller is free to write the next one.
+ */
+public class DirectoryFileProducer extends GenericFileProducer<File> implements AsyncProcessor {
+
+    private final DirectoryEndpoint endpoint;
+    private volatile GroupCommitter committer;
+    private ExecutorService executor;
+
+    public DirectoryFileProducer(DirectoryEndpoint endpoint, GenericFileOperations<File> operations) {
+	super(endpoint, operations);
+	this.endpoint = endpoint;
+    }
+
+    @Override
+    public boolean process(Exchange exchange, AsyncCallback callback) {
+	try {
+	    process(exchange);
+	} catch (Exception e) {
+	    exchange.setException(e);
+	}
+	String produced = exchange.getIn().getHeader(Exchange.FILE_NAME_PRODUCED, String.class);
+	GroupCommitter committer = this.committer;
+	if (committer == null || exchange.getException() != null || produced == null) {
+	    callback.done(true);
+	    return true;
+	}
+	committer.commit(new File(produced), exchange, callback);
+	return false;
+    }
+
+    public GroupCommitter getCommitter() {
+	return committer;
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+	super.doStart();
+	if (endpoint.isGroupCommit()) {
+	    committer = new GroupCommitter(endpoint.getGroupCommitSize(), endpoint.getGroupCommitDelay());
+	    executor = endpoint.getCamelContext().getExecutorServiceManager().newSingleThreadExecutor(this, "GroupCommit");
+	    executor.submit(committer);
+	}
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+	if (committer != null) {
+	    committer.stop();
+	    endpoint.getCamelContext().getExecutorServiceManager().shutdownGraceful(executor);
+	    committer.drain();
+	    log.debug("Synced {} files in {} groups", committer.getFiles(), committer.getBatches());
+	    // kept, so an exchange still on its way is synced by its own thread
+	    executor = null;
+	}
+	super.doStop();
+    }
+}
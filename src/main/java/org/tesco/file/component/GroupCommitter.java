@@ -0,0 +1,154 @@
+package org.tesco.file.component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.Exchange;
+import org.apache.camel.component.file.GenericFileOperationFailedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Makes written files durable in groups. Writers hand over a finished file
+ * and carry on; the committer collects files until it has
+ * <tt>maxBatch</tt> of them or <tt>maxDelay</tt> millis have passed since the
+ * first, forces them and their directories to disk in one round, and only
+ * then completes their exchanges. The cost of a sync is so shared by every
+ * file written in the meantime.
+ */
+public class GroupCommitter implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GroupCommitter.class);
+
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<Pending>();
+    private final int maxBatch;
+    private final long maxDelay;
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong files = new AtomicLong();
+    private volatile boolean running = true;
+
+    public GroupCommitter(int maxBatch, long maxDelay) {
+	this.maxBatch = Math.max(1, maxBatch);
+	this.maxDelay = maxDelay;
+    }
+
+    /**
+     * Completes the exchange through the callback once the file is on disk.
+     * After {@link #stop()} the file is synced by the calling thread.
+     */
+    public void commit(File file, Exchange exchange, AsyncCallback callback) {
+	queue.add(new Pending(file, exchange, callback));
+	if (!running) {
+	    // added after the last drain, or about to be drained by it, either way it is synced once
+	    drain();
+	}
+    }
+
+    public long getBatches() {
+	return batches.get();
+    }
+
+    public long getFiles() {
+	return files.get();
+    }
+
+    @Override
+    public void run() {
+	List<Pending> batch = new ArrayList<Pending>();
+	try {
+	    while (running) {
+		Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+		if (first == null) {
+		    continue;
+		}
+		batch.add(first);
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelay);
+		while (batch.size() < maxBatch) {
+		    Pending next = queue.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+		    if (next == null) {
+			break;
+		    }
+		    batch.add(next);
+		}
+		sync(batch);
+		batch.clear();
+	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	} finally {
+	    // never leave an exchange hanging
+	    sync(batch);
+	}
+    }
+
+    /**
+     * Stops taking new batches. Call {@link #drain()} once the committer thread
+     * has ended to sync what is left; files committed later are synced at once.
+     */
+    public void stop() {
+	running = false;
+    }
+
+    public void drain() {
+	List<Pending> rest = new ArrayList<Pending>();
+	queue.drainTo(rest);
+	sync(rest);
+    }
+
+    private void sync(List<Pending> batch) {
+	if (batch.isEmpty()) {
+	    return;
+	}
+	Set<File> directories = new LinkedHashSet<File>();
+	for (Pending pending : batch) {
+	    // read is enough to force, and still opens once chmod made the file read-only
+	    try (FileChannel channel = FileChannel.open(pending.file.toPath(), StandardOpenOption.READ)) {
+		channel.force(true);
+		directories.add(pending.file.getAbsoluteFile().getParentFile());
+	    } catch (NoSuchFileException e) {
+		LOG.debug("File was taken away before it was synced: {}", pending.file);
+	    } catch (IOException e) {
+		pending.exchange.setException(new GenericFileOperationFailedException("Cannot sync file: " + pending.file, e));
+	    }
+	}
+	for (File directory : directories) {
+	    // makes the names durable, not just the content
+	    try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+		channel.force(true);
+	    } catch (IOException e) {
+		LOG.debug("Cannot sync directory {} due {}", directory, e.getMessage());
+	    }
+	}
+	batches.incrementAndGet();
+	files.addAndGet(batch.size());
+	LOG.trace("Synced {} files in {} directories", batch.size(), directories.size());
+	for (Pending pending : batch) {
+	    pending.callback.done(false);
+	}
+	batch.clear();
+    }
+
+    private static final class Pending {
+	final File file;
+	final Exchange exchange;
+	final AsyncCallback callback;
+
+	Pending(File file, Exchange exchange, AsyncCallback callback) {
+	    this.file = file;
+	    this.exchange = exchange;
+	    this.callback = callback;
+	}
+    }
+}
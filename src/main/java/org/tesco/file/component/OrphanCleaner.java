@@ -0,0 +1,93 @@
+package org.tesco.file.component;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deletes the temp files that earlier runs of an <tt>atomicWrite</tt>
+ * producer left behind when they died mid-write. It runs once, in the
+ * background, so startup does not wait for a walk of the whole output.
+ * <p>
+ * Temp files carry the id of the run that wrote them, so the files this run
+ * is writing are never touched, and files modified within <tt>minAge</tt>
+ * millis are left alone in case another process is still writing them.
+ */
+public class OrphanCleaner implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OrphanCleaner.class);
+
+    static final Pattern TEMP_NAME = Pattern.compile("\\..+\\.([0-9a-f]{8})\\.part");
+
+    private final Path directory;
+    private final String runId;
+    private final long minAge;
+    private final Set<String> keep;
+    private volatile boolean stopped;
+    private int deleted;
+
+    /**
+     * @param keep absolute paths of temp files to leave alone, such as partial
+     *            copies that can still be resumed
+     */
+    public OrphanCleaner(Path directory, String runId, long minAge, Set<String> keep) {
+	this.directory = directory;
+	this.runId = runId;
+	this.minAge = minAge;
+	this.keep = keep;
+    }
+
+    /**
+     * Builds the temp name a run writes the given file under.
+     */
+    static String tempName(String name, String runId) {
+	return "." + name + "." + runId + ".part";
+    }
+
+    public void stop() {
+	stopped = true;
+    }
+
+    @Override
+    public void run() {
+	final long before = System.currentTimeMillis() - minAge;
+	try {
+	    Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+		@Override
+		public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+		    if (stopped) {
+			return FileVisitResult.TERMINATE;
+		    }
+		    Matcher matcher = TEMP_NAME.matcher(file.getFileName().toString());
+		    if (matcher.matches() && !matcher.group(1).equals(runId) && attrs.lastModifiedTime().toMillis() < before
+			    && !keep.contains(file.toAbsolutePath().toString())) {
+			if (Files.deleteIfExists(file)) {
+			    deleted++;
+			}
+		    }
+		    return FileVisitResult.CONTINUE;
+		}
+
+		@Override
+		public FileVisitResult visitFileFailed(Path file, IOException e) {
+		    return FileVisitResult.CONTINUE;
+		}
+	    });
+	    LOG.debug("Deleted {} orphaned temp files in {}", deleted, directory);
+	} catch (NoSuchFileException e) {
+	    // nothing written yet
+	} catch (IOException e) {
+	    LOG.warn("Cannot clean up orphaned temp files in " + directory + " due " + e.getMessage(), e);
+	}
+    }
+}
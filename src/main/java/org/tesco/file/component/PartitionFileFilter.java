@@ -0,0 +1,45 @@
+package org.tesco.file.component;
+
+import java.io.File;
+
+import org.apache.camel.component.file.GenericFile;
+import org.apache.camel.component.file.GenericFileFilter;
+
+/**
+ * Accepts only the files whose name hashes into one partition, so several
+ * consumers can share a directory without ever claiming the same file and
+ * without lock files. Directories are always accepted so a recursive scan
+ * still descends into them.
+ */
+public class PartitionFileFilter implements GenericFileFilter<File> {
+
+    private final GenericFileFilter<File> delegate;
+    private final int partition;
+    private final int partitions;
+
+    public PartitionFileFilter(GenericFileFilter<File> delegate, int partition, int partitions) {
+	if (partition < 0 || partition >= partitions) {
+	    throw new IllegalArgumentException("Partition " + partition + " is not within 0.." + (partitions - 1));
+	}
+	this.delegate = delegate;
+	this.partition = partition;
+	this.partitions = partitions;
+    }
+
+    @Override
+    public boolean accept(GenericFile<File> file) {
+	if (!file.isDirectory() && partitionOf(file.getRelativeFilePath(), partitions) != partition) {
+	    return false;
+	}
+	return delegate == null || delegate.accept(file);
+    }
+
+    public static int partitionOf(String name, int partitions) {
+	int h = name.hashCode();
+	// spread the bits, String.hashCode is weak in the low bits for short names
+	h ^= (h >>> 16);
+	h *= 0x85ebca6b;
+	h ^= (h >>> 13);
+	return Math.floorMod(h, partitions);
+    }
+}
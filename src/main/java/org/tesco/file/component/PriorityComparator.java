@@ -0,0 +1,70 @@
+package org.tesco.file.component;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.apache.camel.component.file.GenericFile;
+
+/**
+ * Orders files by a {@link PriorityPolicy}, most urgent first.
+ * <p>
+ * Pattern weights are given as <tt>regex:weight</tt> pairs separated by
+ * <tt>;</tt>, for example <tt>urgent-.*:10;.*\.ctl:5</tt>, and matched against
+ * the file name. The first matching pattern gives the weight, no match
+ * weighs 0.
+ */
+public class PriorityComparator implements Comparator<GenericFile<File>> {
+
+    private final PriorityPolicy policy;
+    private final List<Pattern> patterns = new ArrayList<Pattern>();
+    private final List<Integer> weights = new ArrayList<Integer>();
+
+    public PriorityComparator(PriorityPolicy policy, String priorityWeights) {
+	this.policy = policy;
+	if (policy == PriorityPolicy.PATTERN) {
+	    if (priorityWeights == null || priorityWeights.trim().isEmpty()) {
+		throw new IllegalArgumentException("priority=pattern needs the priorityWeights option");
+	    }
+	    for (String pair : priorityWeights.split(";")) {
+		int idx = pair.lastIndexOf(':');
+		if (idx <= 0) {
+		    throw new IllegalArgumentException("Invalid priority weight, expected regex:weight but was " + pair);
+		}
+		patterns.add(Pattern.compile(pair.substring(0, idx)));
+		weights.add(Integer.valueOf(pair.substring(idx + 1).trim()));
+	    }
+	}
+    }
+
+    @Override
+    public int compare(GenericFile<File> a, GenericFile<File> b) {
+	int answer;
+	switch (policy) {
+	case SMALLEST:
+	    answer = Long.compare(a.getFileLength(), b.getFileLength());
+	    break;
+	case PATTERN:
+	    answer = Integer.compare(weight(b), weight(a));
+	    if (answer == 0) {
+		answer = Long.compare(a.getLastModified(), b.getLastModified());
+	    }
+	    break;
+	default:
+	    answer = Long.compare(a.getLastModified(), b.getLastModified());
+	    break;
+	}
+	return answer != 0 ? answer : a.getRelativeFilePath().compareTo(b.getRelativeFilePath());
+    }
+
+    private int weight(GenericFile<File> file) {
+	for (int i = 0; i < patterns.size(); i++) {
+	    if (patterns.get(i).matcher(file.getFileNameOnly()).matches()) {
+		return weights.get(i);
+	    }
+	}
+	return 0;
+    }
+}
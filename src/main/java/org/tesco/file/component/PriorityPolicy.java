@@ -0,0 +1,17 @@
+package org.tesco.file.component;
+
+/**
+ * Order in which a {@link DirectoryEndpoint} picks files when more are
+ * waiting than it takes per poll.
+ */
+public enum PriorityPolicy {
+
+    /** Earliest modification time first. */
+    OLDEST,
+
+    /** Smallest file first. */
+    SMALLEST,
+
+    /** Highest <tt>priorityWeights</tt> pattern first, oldest among equals. */
+    PATTERN
+}
@@ -0,0 +1,100 @@
+package org.tesco.file.component;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.component.file.GenericFile;
+import org.apache.camel.component.file.GenericFileFilter;
+
+/**
+ * Accepts a file only once its size and modification time have been the same
+ * on <tt>passes</tt> consecutive polls. It works off the attributes the
+ * directory listing already read, so deciding that a file is complete costs
+ * no extra stat, no sleeping and no marker file.
+ * <p>
+ * Files that have not been seen for <tt>expiry</tt> millis are forgotten, which
+ * keeps the table bounded by what is currently in the directory.
+ */
+public class ReadinessFileFilter implements GenericFileFilter<File> {
+
+    private final GenericFileFilter<File> delegate;
+    private final int passes;
+    private final long expiry;
+    private final ConcurrentMap<String, Observation> observations = new ConcurrentHashMap<String, Observation>();
+    private final AtomicLong waiting = new AtomicLong();
+    private volatile long nextSweep;
+
+    public ReadinessFileFilter(GenericFileFilter<File> delegate, int passes, long expiry) {
+	this.delegate = delegate;
+	this.passes = passes;
+	this.expiry = expiry;
+	this.nextSweep = System.currentTimeMillis() + expiry;
+    }
+
+    @Override
+    public boolean accept(GenericFile<File> file) {
+	if (delegate != null && !delegate.accept(file)) {
+	    return false;
+	}
+	if (file.isDirectory()) {
+	    return true;
+	}
+	if (isReady(file.getAbsoluteFilePath(), file.getFileLength(), file.getLastModified())) {
+	    return true;
+	}
+	waiting.incrementAndGet();
+	return false;
+    }
+
+    /**
+     * Number of times a file was turned away for not being stable yet. Only
+     * ever grows, so callers can compare it before and after a check.
+     */
+    public long getWaiting() {
+	return waiting.get();
+    }
+
+    public int getTracked() {
+	return observations.size();
+    }
+
+    private boolean isReady(String key, long size, long modified) {
+	long now = System.currentTimeMillis();
+	if (now >= nextSweep) {
+	    sweep(now);
+	}
+
+	Observation observation = observations.get(key);
+	if (observation == null || observation.size != size || observation.modified != modified) {
+	    observations.put(key, new Observation(size, modified, now));
+	    return passes <= 1;
+	}
+	observation.lastSeen = now;
+	return ++observation.passes >= passes;
+    }
+
+    private void sweep(long now) {
+	nextSweep = now + expiry;
+	for (Iterator<Observation> it = observations.values().iterator(); it.hasNext();) {
+	    if (it.next().lastSeen < now - expiry) {
+		it.remove();
+	    }
+	}
+    }
+
+    private static final class Observation {
+	final long size;
+	final long modified;
+	volatile int passes = 1;
+	volatile long lastSeen;
+
+	Observation(long size, long modified, long lastSeen) {
+	    this.size = size;
+	    this.modified = modified;
+	    this.lastSeen = lastSeen;
+	}
+    }
+}
@@ -0,0 +1,487 @@
+package org.tesco.file.component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.component.file.GenericFile;
+import org.apache.camel.component.file.GenericFileOperationFailedException;
+import org.apache.camel.component.file.GenericFileOperations;
+import org.apache.camel.support.SynchronizationAdapter;
+import org.apache.camel.util.FileUtil;
+
+/**
+ * Consumer that walks the directory through a lazy {@link DirectoryStream}
+ * and hands every file to the route as soon as it is found, instead of
+ * gathering the whole listing first. Memory use does not grow with the
+ * number of entries in the directory.
+ * <p>
+ * As there is no complete listing the <tt>sorter</tt>, <tt>sortBy</tt> and
+ * <tt>shuffle</tt> options do not apply, and exchanges carry no batch size.
+ * <p>
+ * With <tt>incremental=true</tt> a {@link DirectoryCache} lets recursive scans
+ * skip listing directories that have not changed since the last poll.
+ * <p>
+ * With a <tt>priority</tt> the whole directory is walked first and only the
+ * <tt>maxMessagesPerPoll</tt> most urgent files are kept, in a
+ * {@link TopFileSelection}, and then processed in order.
+ * <p>
+ * With <tt>lanes=true</tt> every first-level subdirectory is walked as a lane
+ * of its own, and the lanes are served by a {@link DeficitRoundRobin} weighted
+ * by bytes, so one busy subdirectory cannot hold up the others. Files directly
+ * in the directory make up one more lane.
+ */
+public class StreamingFileConsumer extends DirectoryFileConsumer {
+
+    private static final long SAVE_INTERVAL = 60000;
+
+    private final DirectoryCache directoryCache;
+    private final TopFileSelection selection;
+    private final DeficitRoundRobin fairLanes;
+    private final Set<String> deferred = new HashSet<String>();
+    private long lastSaved;
+    private int polled;
+    private int skippedDirectories;
+    private long skippedEntries;
+
+    public StreamingFileConsumer(DirectoryEndpoint endpoint, Processor processor, GenericFileOperations<File> operations) {
+	super(endpoint, processor, operations);
+	this.directoryCache = endpoint.isIncremental() ? new DirectoryCache(endpoint.getDirectoryCacheFile()) : null;
+	if (endpoint.getPriority() != null) {
+	    if (endpoint.getMaxMessagesPerPoll() <= 0) {
+		throw new IllegalArgumentException("The priority option needs maxMessagesPerPoll to bound the selection");
+	    }
+	    this.selection = new TopFileSelection(new PriorityComparator(endpoint.getPriority(), endpoint.getPriorityWeights()),
+		    endpoint.getMaxMessagesPerPoll());
+	} else {
+	    this.selection = null;
+	}
+	if (endpoint.isLanes()) {
+	    if (selection != null) {
+		throw new IllegalArgumentException("The lanes and priority options cannot be combined");
+	    }
+	    if (!endpoint.isRecursive() || endpoint.getMaxDepth() < 2) {
+		throw new IllegalArgumentException("The lanes option needs recursive=true");
+	    }
+	    this.fairLanes = new DeficitRoundRobin(endpoint.getLaneQuantum(), endpoint.getLaneWeights());
+	} else {
+	    this.fairLanes = null;
+	}
+    }
+
+    @Override
+    protected int poll() throws Exception {
+	if (!prepareOnStartup) {
+	    endpoint.getGenericFileProcessStrategy().prepareOnStartup(operations, endpoint);
+	    prepareOnStartup = true;
+	}
+
+	fileExpressionResult = null;
+	shutdownRunningTask = null;
+	pendingExchanges = 0;
+
+	if (!prePollCheck()) {
+	    log.debug("Skipping poll as pre poll check returned false");
+	    return 0;
+	}
+
+	File directory = getEndpoint().getFile();
+	if (!directory.isDirectory()) {
+	    log.debug("Cannot poll as directory does not exists or its not a directory: {}", directory);
+	    if (getEndpoint().isDirectoryMustExist()) {
+		throw new GenericFileOperationFailedException("Directory does not exist: " + directory);
+	    }
+	    return 0;
+	}
+
+	polled = 0;
+	skippedDirectories = 0;
+	skippedEntries = 0;
+	if (selection != null) {
+	    // the pre poll check may have cut the batch to the room left in flight
+	    selection.setLimit(maxMessagesPerPoll);
+	}
+	if (fairLanes != null) {
+	    pollLanes(directory.toPath());
+	} else {
+	    scan(directory.toPath(), 0);
+	}
+	if (selection != null) {
+	    processSelection();
+	}
+	if (skippedDirectories > 0) {
+	    log.debug("Skipped listing {} unchanged directories holding {} entries", skippedDirectories, skippedEntries);
+	}
+	if (directoryCache != null && directoryCache.isDirty() && System.currentTimeMillis() - lastSaved > SAVE_INTERVAL) {
+	    saveDirectoryCache();
+	}
+
+	postPollCheck(polled);
+	return polled;
+    }
+
+    /**
+     * @return <tt>false</tt> if the scan stopped before the directory was
+     *         complete, because the poll limit was hit or we are stopping
+     */
+    private boolean scan(Path directory, int depth) throws IOException {
+	depth++;
+	if (directoryCache != null) {
+	    List<String> subdirectories = directoryCache.unchanged(directory);
+	    if (subdirectories != null) {
+		skippedDirectories++;
+		skippedEntries += directoryCache.count(directory);
+		for (String name : subdirectories) {
+		    if (!scan(directory.resolve(name), depth)) {
+			return false;
+		    }
+		}
+		return true;
+	    }
+	}
+
+	// read before listing, so a change made during the listing is seen next time
+	long modified = directory.toFile().lastModified();
+	List<String> subdirectories = new ArrayList<String>();
+	int count = 0;
+	boolean complete = true;
+	ReadinessFileFilter readiness = endpoint.getFilter() instanceof ReadinessFileFilter ? (ReadinessFileFilter) endpoint.getFilter() : null;
+	try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+	    for (Path path : stream) {
+		if (!isBatchAllowed() || (selection == null && maxMessagesPerPoll > 0 && polled >= maxMessagesPerPoll)) {
+		    return false;
+		}
+		count++;
+
+		File file = path.toFile();
+		if (file.isDirectory()) {
+		    if (endpoint.isRecursive() && depth < endpoint.getMaxDepth() && isValidFile(asGenericFile(file), true, null)) {
+			subdirectories.add(file.getName());
+			if (!scan(path, depth)) {
+			    return false;
+			}
+		    }
+		} else if (depth >= endpoint.getMinDepth()) {
+		    GenericFile<File> gf = asGenericFile(file);
+		    long waiting = readiness != null ? readiness.getWaiting() : 0;
+		    if (isValidFile(gf, false, null)) {
+			if (selection != null) {
+			    GenericFile<File> evicted = selection.offer(gf);
+			    if (evicted != null) {
+				deselect(evicted);
+			    }
+			} else if (processFile(gf)) {
+			    polled++;
+			} else {
+			    // could not begin, so this directory must be listed again
+			    complete = false;
+			}
+		    } else if (readiness != null && readiness.getWaiting() != waiting) {
+			// still being written, it has to be seen again
+			complete = false;
+		    }
+		}
+	    }
+	} catch (NoSuchFileException e) {
+	    log.debug("Directory disappeared while scanning: {}", directory);
+	    return true;
+	}
+
+	if (complete && directoryCache != null) {
+	    directoryCache.put(directory, modified, count, subdirectories);
+	}
+	return true;
+    }
+
+    private void pollLanes(Path root) throws IOException {
+	List<Lane> lanes = new ArrayList<Lane>();
+	lanes.add(new Lane("", root, 1, false));
+	for (String name : laneNames(root)) {
+	    lanes.add(new Lane(name, root.resolve(name), 2, true));
+	}
+
+	fairLanes.start(lanes);
+	try {
+	    while ((maxMessagesPerPoll <= 0 || polled < maxMessagesPerPoll) && isBatchAllowed()) {
+		Lane lane = (Lane) fairLanes.next();
+		if (lane == null) {
+		    break;
+		}
+		lane.process();
+	    }
+	} finally {
+	    for (Lane lane : lanes) {
+		lane.close();
+	    }
+	}
+    }
+
+    private List<String> laneNames(Path root) throws IOException {
+	List<String> names = directoryCache != null ? directoryCache.unchanged(root) : null;
+	if (names == null) {
+	    names = new ArrayList<String>();
+	    try (DirectoryStream<Path> stream = Files.newDirectoryStream(root)) {
+		for (Path path : stream) {
+		    File file = path.toFile();
+		    if (file.isDirectory() && isValidFile(asGenericFile(file), true, null)) {
+			names.add(file.getName());
+		    }
+		}
+	    }
+	}
+	// the same order on every poll, so the round carries on where it stopped
+	List<String> sorted = new ArrayList<String>(names);
+	Collections.sort(sorted);
+	return sorted;
+    }
+
+    private void deselect(GenericFile<File> file) {
+	endpoint.getInProgressRepository().remove(file.getAbsoluteFilePath());
+	// left for a later poll, so its directory must be listed again
+	deferred.add(file.getFile().getParent());
+    }
+
+    private void processSelection() {
+	for (GenericFile<File> gf : selection.drain()) {
+	    if (!isBatchAllowed()) {
+		deselect(gf);
+	    } else if (processFile(gf)) {
+		polled++;
+	    } else {
+		deferred.add(gf.getFile().getParent());
+	    }
+	}
+	if (directoryCache != null) {
+	    for (String parent : deferred) {
+		directoryCache.invalidate(parent);
+	    }
+	}
+	deferred.clear();
+    }
+
+    /**
+     * Hands a single file to the route, going through the same filters,
+     * idempotent and in-progress checks as a file from a full listing.
+     */
+    protected boolean processFile(File file) {
+	GenericFile<File> gf = asGenericFile(file);
+	return isValidFile(gf, false, null) && processFile(gf);
+    }
+
+    private boolean processFile(GenericFile<File> gf) {
+	Exchange exchange = getEndpoint().createExchange(gf);
+	endpoint.configureExchange(exchange);
+	endpoint.configureMessage(gf, exchange.getIn());
+	if (directoryCache != null) {
+	    final String parent = gf.getFile().getParent();
+	    exchange.addOnCompletion(new SynchronizationAdapter() {
+		@Override
+		public void onFailure(Exchange exchange) {
+		    // the file stays behind to be retried, so its directory must be listed again
+		    directoryCache.invalidate(parent);
+		}
+	    });
+	}
+	return processExchange(exchange);
+    }
+
+    /**
+     * Walks one subdirectory tree a file at a time, listing directories only
+     * as the files before them are taken. Like {@link #scan(Path, int)} it
+     * remembers directories that were listed completely, and skips the ones
+     * the cache knows are unchanged.
+     */
+    private final class Lane implements DeficitRoundRobin.Lane {
+
+	private final String name;
+	private final boolean descend;
+	private final Deque<Path> directories = new ArrayDeque<Path>();
+	private final Deque<Integer> depths = new ArrayDeque<Integer>();
+	private final ReadinessFileFilter readiness;
+	private DirectoryStream<Path> stream;
+	private Iterator<Path> entries;
+	private Path directory;
+	private int depth;
+	private long modified;
+	private int count;
+	private List<String> subdirectories;
+	private boolean complete;
+	private GenericFile<File> head;
+
+	Lane(String name, Path directory, int depth, boolean descend) {
+	    this.name = name;
+	    this.descend = descend;
+	    this.readiness = endpoint.getFilter() instanceof ReadinessFileFilter ? (ReadinessFileFilter) endpoint.getFilter() : null;
+	    directories.push(directory);
+	    depths.push(depth);
+	}
+
+	@Override
+	public String getName() {
+	    return name;
+	}
+
+	@Override
+	public long peek() throws IOException {
+	    while (head == null) {
+		if (entries == null) {
+		    if (directories.isEmpty()) {
+			return -1;
+		    }
+		    open(directories.pop(), depths.pop());
+		} else if (!entries.hasNext()) {
+		    finish();
+		} else {
+		    Path path = entries.next();
+		    count++;
+		    File file = path.toFile();
+		    if (file.isDirectory()) {
+			if (depth < endpoint.getMaxDepth() && isValidFile(asGenericFile(file), true, null)) {
+			    subdirectories.add(file.getName());
+			    if (descend) {
+				directories.push(path);
+				depths.push(depth + 1);
+			    }
+			}
+		    } else if (depth >= endpoint.getMinDepth()) {
+			GenericFile<File> gf = asGenericFile(file);
+			long waiting = readiness != null ? readiness.getWaiting() : 0;
+			if (isValidFile(gf, false, null)) {
+			    head = gf;
+			} else if (readiness != null && readiness.getWaiting() != waiting) {
+			    // still being written, it has to be seen again
+			    complete = false;
+			}
+		    }
+		}
+	    }
+	    return head.getFileLength();
+	}
+
+	void process() {
+	    GenericFile<File> gf = head;
+	    head = null;
+	    if (processFile(gf)) {
+		polled++;
+	    } else {
+		// could not begin, so this directory must be listed again
+		complete = false;
+	    }
+	}
+
+	private void open(Path next, int nextDepth) throws IOException {
+	    if (directoryCache != null) {
+		List<String> remembered = directoryCache.unchanged(next);
+		if (remembered != null) {
+		    skippedDirectories++;
+		    skippedEntries += directoryCache.count(next);
+		    if (descend) {
+			for (String subdirectory : remembered) {
+			    directories.push(next.resolve(subdirectory));
+			    depths.push(nextDepth + 1);
+			}
+		    }
+		    return;
+		}
+	    }
+	    // read before listing, so a change made during the listing is seen next time
+	    modified = next.toFile().lastModified();
+	    try {
+		stream = Files.newDirectoryStream(next);
+	    } catch (NoSuchFileException e) {
+		log.debug("Directory disappeared while scanning: {}", next);
+		return;
+	    }
+	    entries = stream.iterator();
+	    directory = next;
+	    depth = nextDepth;
+	    count = 0;
+	    subdirectories = new ArrayList<String>();
+	    complete = true;
+	}
+
+	private void finish() throws IOException {
+	    closeStream();
+	    if (complete && directoryCache != null) {
+		directoryCache.put(directory, modified, count, subdirectories);
+	    }
+	}
+
+	void close() throws IOException {
+	    if (head != null) {
+		// claimed but left for a later poll
+		endpoint.getInProgressRepository().remove(head.getAbsoluteFilePath());
+		head = null;
+	    }
+	    closeStream();
+	}
+
+	private void closeStream() throws IOException {
+	    entries = null;
+	    if (stream != null) {
+		stream.close();
+		stream = null;
+	    }
+	}
+    }
+
+    private void saveDirectoryCache() {
+	lastSaved = System.currentTimeMillis();
+	try {
+	    directoryCache.save();
+	} catch (IOException e) {
+	    log.warn("Cannot save directory cache of " + getEndpoint() + " due " + e.getMessage(), e);
+	}
+    }
+
+    protected GenericFile<File> asGenericFile(File file) {
+	return asGenericFile(getEndpoint().getConfiguration().getDirectory(), file,
+		getEndpoint().getCharset(), getEndpoint().isProbeContentType());
+    }
+
+    @Override
+    protected boolean isMatched(GenericFile<File> file, String doneFileName, List<File> files) {
+	if (files == null) {
+	    // no listing at hand, so look for the done file directly
+	    return new File(file.getFile().getParentFile(), FileUtil.stripPath(doneFileName)).exists();
+	}
+	return super.isMatched(file, doneFileName, files);
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+	if (endpoint.getSorter() != null || endpoint.getSortBy() != null || endpoint.isShuffle()) {
+	    log.warn("Files are consumed in directory order by {}, the sorter, sortBy and shuffle options are ignored", getEndpoint());
+	}
+	if (directoryCache != null) {
+	    try {
+		directoryCache.load();
+		log.debug("Loaded {} cached directories for {}", directoryCache.size(), getEndpoint());
+	    } catch (IOException e) {
+		log.warn("Cannot load directory cache of " + getEndpoint() + ", starting with a full scan due " + e.getMessage());
+	    }
+	}
+	super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+	super.doStop();
+	if (directoryCache != null && directoryCache.isDirty()) {
+	    saveDirectoryCache();
+	}
+    }
+}
@@ -0,0 +1,64 @@
+package org.tesco.file.component;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.camel.component.file.GenericFile;
+
+/**
+ * Keeps the <tt>limit</tt> most urgent files offered to it in a bounded heap,
+ * so picking the best K out of n listed files takes O(n log K) time and O(K)
+ * memory instead of sorting the whole listing.
+ */
+public class TopFileSelection {
+
+    private final Comparator<GenericFile<File>> priority;
+    private int limit;
+    // least urgent at the head, ready to be evicted
+    private final PriorityQueue<GenericFile<File>> heap;
+
+    public TopFileSelection(Comparator<GenericFile<File>> priority, int limit) {
+	this.priority = priority;
+	this.limit = limit;
+	this.heap = new PriorityQueue<GenericFile<File>>(limit, Collections.reverseOrder(priority));
+    }
+
+    /**
+     * Sets how many files the next selection keeps, as a poll may have room
+     * for fewer than it was built for. Call while the selection is empty.
+     */
+    public void setLimit(int limit) {
+	this.limit = limit;
+    }
+
+    /**
+     * @return the file that fell out of the selection, which may be the one
+     *         offered, or <tt>null</tt> if none did
+     */
+    public GenericFile<File> offer(GenericFile<File> file) {
+	if (heap.size() < limit) {
+	    heap.add(file);
+	    return null;
+	}
+	if (priority.compare(file, heap.peek()) >= 0) {
+	    return file;
+	}
+	GenericFile<File> evicted = heap.poll();
+	heap.add(file);
+	return evicted;
+    }
+
+    /**
+     * @return the selected files, most urgent first, leaving the selection empty
+     */
+    public List<GenericFile<File>> drain() {
+	List<GenericFile<File>> answer = new ArrayList<GenericFile<File>>(heap);
+	heap.clear();
+	answer.sort(priority);
+	return answer;
+    }
+}
@@ -0,0 +1,259 @@
+package org.tesco.file.component;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.Processor;
+import org.apache.camel.component.file.GenericFileOperations;
+
+/**
+ * Consumer that picks files up from {@link WatchService} events (inotify on
+ * Linux) instead of listing the directory on every poll.
+ * <p>
+ * The JDK does not report close-after-write, so a file is handed to the route
+ * once it has gone <tt>settleDelay</tt> without further events. The regular
+ * scheduled poll still runs, every <tt>reconcileDelay</tt>, as a streaming
+ * reconciliation scan for events that were missed; an overflowed event queue
+ * triggers one straight away.
+ * <p>
+ * Settled files are handed over under the same lock as the reconciliation
+ * scan, so the two never claim a file at once, and only down to the
+ * <tt>minDepth</tt> and <tt>maxDepth</tt> a scan would go. While the route
+ * has no room under <tt>maxInFlightFiles</tt> or <tt>maxInFlightBytes</tt>
+ * they stay pending. They go in the order their events settled, so the
+ * endpoint rejects the <tt>priority</tt>, <tt>sorter</tt>, <tt>sortBy</tt>
+ * and <tt>shuffle</tt> options. With <tt>readyPasses</tt> every settled
+ * check is a pass, and a file not stable for that many stays pending.
+ */
+public class WatchFileConsumer extends StreamingFileConsumer {
+
+    private final Object scanLock = new Object();
+    private final Map<WatchKey, Path> keys = new HashMap<WatchKey, Path>();
+    // insertion ordered by last event, so the oldest entry is always first
+    private final LinkedHashMap<Path, Long> pending = new LinkedHashMap<Path, Long>();
+    private final long settleDelay;
+    private final long reconcileDelay;
+    private ReadinessFileFilter readiness;
+    private Path root;
+    private WatchService watcher;
+    private ExecutorService executor;
+
+    public WatchFileConsumer(DirectoryEndpoint endpoint, Processor processor, GenericFileOperations<File> operations) {
+	super(endpoint, processor, operations);
+	this.settleDelay = endpoint.getSettleDelay();
+	this.reconcileDelay = endpoint.getReconcileDelay();
+    }
+
+    @Override
+    protected int poll() throws Exception {
+	synchronized (scanLock) {
+	    return super.poll();
+	}
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+	// register before the first scan so nothing is created in between unseen
+	root = getEndpoint().getFile().toPath();
+	readiness = getEndpoint().getFilter() instanceof ReadinessFileFilter ? (ReadinessFileFilter) getEndpoint().getFilter() : null;
+	watcher = root.getFileSystem().newWatchService();
+	if (Files.isDirectory(root)) {
+	    register(root);
+	} else {
+	    log.warn("Cannot watch as directory does not exist: {}, relying on reconciliation scans", root);
+	}
+
+	// the scheduled poll is only the reconciliation scan in this mode
+	setDelay(reconcileDelay);
+	super.doStart();
+
+	executor = getEndpoint().getCamelContext().getExecutorServiceManager().newSingleThreadExecutor(this, "WatchService");
+	executor.submit(new Runnable() {
+	    @Override
+	    public void run() {
+		watch();
+	    }
+	});
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+	if (executor != null) {
+	    getEndpoint().getCamelContext().getExecutorServiceManager().shutdownNow(executor);
+	    executor = null;
+	}
+	if (watcher != null) {
+	    watcher.close();
+	    watcher = null;
+	}
+	super.doStop();
+    }
+
+    private void watch() {
+	WatchService watcher = this.watcher;
+	while (isRunAllowed()) {
+	    WatchKey key;
+	    try {
+		key = watcher.poll(settleDelay, TimeUnit.MILLISECONDS);
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		return;
+	    } catch (ClosedWatchServiceException e) {
+		return;
+	    }
+
+	    if (key != null && onEvents(key)) {
+		reconcile();
+	    }
+	    if (!isSuspendingOrSuspended()) {
+		dispatchSettled();
+	    }
+	}
+    }
+
+    /**
+     * @return <tt>true</tt> if events were lost and a full scan is needed
+     */
+    private boolean onEvents(WatchKey key) {
+	boolean overflow = false;
+	Path dir = keys.get(key);
+	for (WatchEvent<?> event : key.pollEvents()) {
+	    if (event.kind() == OVERFLOW || dir == null) {
+		overflow = true;
+		continue;
+	    }
+
+	    Path path = dir.resolve((Path) event.context());
+	    // re-insert so the entry moves to the tail of the pending queue
+	    pending.remove(path);
+	    if (event.kind() == ENTRY_DELETE) {
+		continue;
+	    }
+	    if (Files.isDirectory(path)) {
+		if (getEndpoint().isRecursive() && !isHidden(path) && depth(path) < getEndpoint().getMaxDepth()) {
+		    try {
+			register(path);
+			// files may have landed before the directory was registered
+			overflow |= enqueue(path);
+		    } catch (IOException e) {
+			log.warn("Cannot watch directory: {} due {}", path, e.getMessage());
+			overflow = true;
+		    }
+		}
+	    } else {
+		pending.put(path, System.currentTimeMillis());
+	    }
+	}
+	if (!key.reset()) {
+	    keys.remove(key);
+	}
+	return overflow;
+    }
+
+    private boolean enqueue(Path dir) throws IOException {
+	boolean nested = false;
+	long now = System.currentTimeMillis();
+	try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+	    for (Path path : stream) {
+		if (Files.isDirectory(path)) {
+		    nested = true;
+		} else {
+		    pending.put(path, now);
+		}
+	    }
+	}
+	// nested directories are left to the reconciliation scan
+	return nested;
+    }
+
+    private void dispatchSettled() {
+	long now = System.currentTimeMillis();
+	long settled = now - settleDelay;
+	List<Path> unready = new ArrayList<Path>();
+	synchronized (scanLock) {
+	    Iterator<Map.Entry<Path, Long>> it = pending.entrySet().iterator();
+	    while (it.hasNext() && isRunAllowed()) {
+		Map.Entry<Path, Long> entry = it.next();
+		if (entry.getValue() > settled || !isRoomForFile()) {
+		    // a full route leaves the rest pending until it has room
+		    break;
+		}
+		it.remove();
+		File file = entry.getKey().toFile();
+		int depth = depth(entry.getKey());
+		if (file.isFile() && depth >= getEndpoint().getMinDepth() && depth <= getEndpoint().getMaxDepth()) {
+		    long waiting = readiness != null ? readiness.getWaiting() : 0;
+		    if (!processFile(file) && readiness != null && readiness.getWaiting() != waiting) {
+			unready.add(entry.getKey());
+		    }
+		}
+	    }
+	    // turned away for readyPasses, so seen again once another settleDelay passed
+	    for (Path path : unready) {
+		pending.put(path, now);
+	    }
+	}
+    }
+
+    private void reconcile() {
+	log.debug("Missed file system events on {}, running a reconciliation scan", getEndpoint());
+	try {
+	    poll();
+	} catch (Exception e) {
+	    handleException("Error during reconciliation scan of " + getEndpoint(), e);
+	}
+    }
+
+    @Override
+    protected boolean processFile(File file) {
+	// the fileName expression is otherwise only evaluated once per poll
+	fileExpressionResult = null;
+	return super.processFile(file);
+    }
+
+    private void register(Path dir) throws IOException {
+	keys.put(dir.register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+	// a subdirectory is only watched while the files in it are within maxDepth
+	if (getEndpoint().isRecursive() && depth(dir) + 1 < getEndpoint().getMaxDepth()) {
+	    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+		for (Path path : stream) {
+		    if (Files.isDirectory(path) && !isHidden(path)) {
+			register(path);
+		    }
+		}
+	    }
+	}
+    }
+
+    /**
+     * @return the depth of a path as the scans count it, 1 for a file right
+     *         in the directory
+     */
+    private int depth(Path path) {
+	return path.equals(root) ? 0 : root.relativize(path).getNameCount();
+    }
+
+    private static boolean isHidden(Path path) {
+	return path.getFileName().toString().startsWith(".");
+    }
+}
@@ -0,0 +1,166 @@
+package org.tesco.file.compress;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip compression that splits its input into blocks and compresses them on
+ * a pool of workers at once, like <tt>pigz</tt>. Every block becomes a gzip
+ * member of its own, and members written one after the other are a single
+ * valid gzip stream, so <tt>gunzip</tt> and {@link java.util.zip.GZIPInputStream}
+ * read the result as usual. Blocks are compressed independently, which costs
+ * a little ratio compared to one member.
+ */
+public class ParallelGzip {
+
+    private static final int HEADER = 10;
+    private static final int TRAILER = 8;
+
+    private final ExecutorService workers;
+    private final int level;
+    private final int blockSize;
+    private final int maxPending;
+
+    /**
+     * @param threads workers the pool has, which bounds the blocks held in
+     *            memory to twice that
+     */
+    public ParallelGzip(ExecutorService workers, int threads, int level, int blockSize) {
+	this.workers = workers;
+	this.level = level;
+	this.blockSize = blockSize;
+	this.maxPending = 2 * Math.max(1, threads);
+    }
+
+    /**
+     * Compresses <tt>in</tt> to its end into <tt>out</tt>.
+     *
+     * @return the number of bytes read
+     */
+    public long compress(InputStream in, OutputStream out) throws IOException {
+	Deque<Future<Member>> pending = new ArrayDeque<>();
+	Deque<byte[]> free = new ArrayDeque<>();
+	long length = 0;
+	try {
+	    while (true) {
+		byte[] block = free.isEmpty() ? new byte[blockSize] : free.poll();
+		int read = readFully(in, block);
+		if (read == 0 && length > 0) {
+		    break;
+		}
+		length += read;
+		// an empty input still makes one empty member
+		pending.add(workers.submit(new Member(block, read)));
+		if (pending.size() >= maxPending) {
+		    free.add(write(pending.poll(), out));
+		}
+		if (read < blockSize) {
+		    break;
+		}
+	    }
+	    while (!pending.isEmpty()) {
+		write(pending.poll(), out);
+	    }
+	    return length;
+	} finally {
+	    for (Future<Member> future : pending) {
+		future.cancel(true);
+	    }
+	}
+    }
+
+    /**
+     * @return the input block, free for reuse
+     */
+    private static byte[] write(Future<Member> future, OutputStream out) throws IOException {
+	try {
+	    Member member = future.get();
+	    out.write(member.output, 0, member.outputLength);
+	    return member.input;
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new InterruptedIOException("Interrupted while compressing");
+	} catch (ExecutionException e) {
+	    throw new IOException("Cannot compress block", e.getCause());
+	}
+    }
+
+    private static int readFully(InputStream in, byte[] block) throws IOException {
+	int read = 0;
+	while (read < block.length) {
+	    int count = in.read(block, read, block.length - read);
+	    if (count < 0) {
+		break;
+	    }
+	    read += count;
+	}
+	return read;
+    }
+
+    /**
+     * One block compressed into a complete gzip member.
+     */
+    private final class Member implements Callable<Member> {
+
+	private final byte[] input;
+	private final int inputLength;
+	private byte[] output;
+	private int outputLength;
+
+	Member(byte[] input, int inputLength) {
+	    this.input = input;
+	    this.inputLength = inputLength;
+	}
+
+	@Override
+	public Member call() {
+	    CRC32 crc = new CRC32();
+	    crc.update(input, 0, inputLength);
+	    // zlib's deflateBound, never exceeded at the default strategy
+	    output = new byte[HEADER + inputLength + (inputLength >> 12) + (inputLength >> 14) + (inputLength >> 25) + 13 + TRAILER];
+	    // magic, deflate, no flags, no time, unknown OS
+	    output[0] = 0x1f;
+	    output[1] = (byte) 0x8b;
+	    output[2] = Deflater.DEFLATED;
+	    output[9] = (byte) 0xff;
+	    outputLength = HEADER;
+
+	    Deflater deflater = new Deflater(level, true);
+	    try {
+		deflater.setInput(input, 0, inputLength);
+		deflater.finish();
+		while (!deflater.finished()) {
+		    if (outputLength == output.length - TRAILER) {
+			output = Arrays.copyOf(output, output.length * 2);
+		    }
+		    outputLength += deflater.deflate(output, outputLength, output.length - TRAILER - outputLength);
+		}
+	    } finally {
+		deflater.end();
+	    }
+	    writeInt(output, outputLength, (int) crc.getValue());
+	    writeInt(output, outputLength + 4, inputLength);
+	    outputLength += TRAILER;
+	    return this;
+	}
+
+	private void writeInt(byte[] b, int off, int value) {
+	    // little endian, as gzip wants it
+	    b[off] = (byte) value;
+	    b[off + 1] = (byte) (value >>> 8);
+	    b[off + 2] = (byte) (value >>> 16);
+	    b[off + 3] = (byte) (value >>> 24);
+	}
+    }
+}
@@ -0,0 +1,137 @@
+package org.tesco.file.compress;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.CamelContextAware;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.api.management.ManagedAttribute;
+import org.apache.camel.api.management.ManagedResource;
+import org.apache.camel.support.ServiceSupport;
+import org.apache.camel.support.SynchronizationAdapter;
+import org.apache.camel.util.FileUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compresses the body with {@link ParallelGzip} into a file in
+ * <tt>workDirectory</tt> and hands that to the producer as its local work
+ * file, to be renamed into place as <tt>name.gz</tt>. Placed between the
+ * input and the output of a route; added to the CamelContext as a service it
+ * is exposed over JMX.
+ */
+@ManagedResource(description = "Parallel gzip")
+public class ParallelGzipProcessor extends ServiceSupport implements Processor, CamelContextAware {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelGzipProcessor.class);
+
+    private final File workDirectory;
+    private final int threads;
+    private final int level;
+    private final int blockSize;
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private CamelContext camelContext;
+    private ExecutorService workers;
+    private ParallelGzip gzip;
+
+    /**
+     * @param workDirectory where files are compressed to, best on the same
+     *            file store as the output so they can be renamed into it
+     */
+    public ParallelGzipProcessor(File workDirectory, int threads, int level, int blockSize) {
+	this.workDirectory = workDirectory;
+	this.threads = threads;
+	this.level = level;
+	this.blockSize = blockSize;
+    }
+
+    @Override
+    public CamelContext getCamelContext() {
+	return camelContext;
+    }
+
+    @Override
+    public void setCamelContext(CamelContext camelContext) {
+	this.camelContext = camelContext;
+    }
+
+    @Override
+    public void process(Exchange exchange) throws Exception {
+	final File compressed = File.createTempFile(".gzip", ".part", workDirectory);
+	exchange.addOnCompletion(new SynchronizationAdapter() {
+	    @Override
+	    public void onDone(Exchange exchange) {
+		// left over if the producer failed or did not take it
+		FileUtil.deleteFile(compressed);
+	    }
+	});
+
+	long length;
+	try (InputStream in = exchange.getIn().getMandatoryBody(InputStream.class); OutputStream out = new FileOutputStream(compressed)) {
+	    length = gzip.compress(in, out);
+	}
+	files.incrementAndGet();
+	bytesIn.addAndGet(length);
+	bytesOut.addAndGet(compressed.length());
+	LOG.trace("Compressed {} bytes to {} bytes", length, compressed.length());
+
+	String name = exchange.getIn().getHeader(Exchange.FILE_NAME, String.class);
+	if (name != null) {
+	    exchange.getIn().setHeader(Exchange.FILE_NAME, name + ".gz");
+	}
+	exchange.getIn().setHeader(Exchange.FILE_LENGTH, compressed.length());
+	exchange.getIn().setHeader(Exchange.FILE_LOCAL_WORK_PATH, compressed.getPath());
+	exchange.getIn().setBody(compressed);
+    }
+
+    @ManagedAttribute(description = "Files compressed")
+    public long getFiles() {
+	return files.get();
+    }
+
+    @ManagedAttribute(description = "Bytes before compression")
+    public long getBytesIn() {
+	return bytesIn.get();
+    }
+
+    @ManagedAttribute(description = "Bytes after compression")
+    public long getBytesOut() {
+	return bytesOut.get();
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+	Files.createDirectories(workDirectory.toPath());
+	// files of an earlier run that never made it to the output
+	File[] leftovers = workDirectory.listFiles();
+	if (leftovers != null) {
+	    for (File leftover : leftovers) {
+		if (leftover.getName().startsWith(".gzip") && leftover.getName().endsWith(".part")) {
+		    FileUtil.deleteFile(leftover);
+		}
+	    }
+	}
+	if (workers == null) {
+	    workers = camelContext.getExecutorServiceManager().newFixedThreadPool(this, "ParallelGzip", threads);
+	}
+	gzip = new ParallelGzip(workers, threads, level, blockSize);
+	LOG.debug("Compressing with {} threads at level {} in blocks of {} bytes into {}", threads, level, blockSize, workDirectory);
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+	if (workers != null) {
+	    camelContext.getExecutorServiceManager().shutdownNow(workers);
+	    workers = null;
+	}
+    }
+}
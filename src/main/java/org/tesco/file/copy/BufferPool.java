@@ -0,0 +1,170 @@
+package org.tesco.file.copy;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.api.management.ManagedAttribute;
+import org.apache.camel.api.management.ManagedResource;
+import org.apache.camel.support.ServiceSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of direct buffers in power of two size classes from 4 KB to 4 MB.
+ * Every thread keeps the last buffer it released of each class up to
+ * {@link #MAX_CACHED}, so a copy loop on a busy thread gets the same buffer
+ * back without touching shared state; the rest go to a shared pool bounded
+ * by <tt>maxPooledBytes</tt>. Once warmed up copying a file allocates
+ * nothing.
+ * <p>
+ * The bound is on the shared pool only. The thread caches come on top, at
+ * most one buffer of each class up to 1 MB, so just under 2 MB for every
+ * thread that copies; they are not counted, as a thread that ends takes its
+ * buffers with it without telling the pool.
+ * <p>
+ * Direct buffers also spare the JDK the temporary direct buffer it copies
+ * heap buffers through for every channel read and write.
+ */
+@ManagedResource(description = "Direct buffer pool")
+public class BufferPool extends ServiceSupport {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BufferPool.class);
+
+    private static final int MIN_SHIFT = 12;
+    private static final int MAX_SHIFT = 22;
+    private static final int MAX_CACHED = 1 << 20;
+
+    private final long maxPooledBytes;
+    private final Queue<ByteBuffer>[] shared;
+    private final ThreadLocal<ByteBuffer[]> cached = new ThreadLocal<ByteBuffer[]>() {
+	@Override
+	protected ByteBuffer[] initialValue() {
+	    return new ByteBuffer[MAX_SHIFT - MIN_SHIFT + 1];
+	}
+    };
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final AtomicLong pooledBytes = new AtomicLong();
+    private final AtomicLong inUse = new AtomicLong();
+
+    /**
+     * @param maxPooledBytes bytes the shared pool holds at most, not counting
+     *            the buffers cached by each thread
+     */
+    public BufferPool(long maxPooledBytes) {
+	this.maxPooledBytes = maxPooledBytes;
+	this.shared = newQueues(MAX_SHIFT - MIN_SHIFT + 1);
+	for (int i = 0; i < shared.length; i++) {
+	    shared[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+	}
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Queue<ByteBuffer>[] newQueues(int length) {
+	return (Queue<ByteBuffer>[]) new Queue<?>[length];
+    }
+
+    /**
+     * @return a cleared buffer of at least <tt>size</tt> bytes, which should
+     *         go back through {@link #release(ByteBuffer)}
+     */
+    public ByteBuffer acquire(int size) {
+	inUse.incrementAndGet();
+	int index = indexOf(size);
+	if (index < 0) {
+	    // larger than any class, not worth keeping
+	    misses.incrementAndGet();
+	    allocatedBytes.addAndGet(size);
+	    return ByteBuffer.allocateDirect(size);
+	}
+
+	ByteBuffer[] local = cached.get();
+	ByteBuffer buffer = local[index];
+	if (buffer != null) {
+	    local[index] = null;
+	} else {
+	    buffer = shared[index].poll();
+	    if (buffer != null) {
+		pooledBytes.addAndGet(-buffer.capacity());
+	    }
+	}
+	if (buffer != null) {
+	    hits.incrementAndGet();
+	    ((Buffer) buffer).clear();
+	    return buffer;
+	}
+	misses.incrementAndGet();
+	allocatedBytes.addAndGet(1 << (index + MIN_SHIFT));
+	return ByteBuffer.allocateDirect(1 << (index + MIN_SHIFT));
+    }
+
+    public void release(ByteBuffer buffer) {
+	if (buffer == null) {
+	    return;
+	}
+	inUse.decrementAndGet();
+	int capacity = buffer.capacity();
+	int index = indexOf(capacity);
+	if (index < 0 || capacity != 1 << (index + MIN_SHIFT)) {
+	    return;
+	}
+	ByteBuffer[] local = cached.get();
+	if (capacity <= MAX_CACHED && local[index] == null) {
+	    local[index] = buffer;
+	} else if (pooledBytes.addAndGet(capacity) <= maxPooledBytes) {
+	    shared[index].offer(buffer);
+	} else {
+	    // full, leave it to the collector
+	    pooledBytes.addAndGet(-capacity);
+	}
+    }
+
+    private static int indexOf(int size) {
+	int shift = Math.max(MIN_SHIFT, 32 - Integer.numberOfLeadingZeros(Math.max(1, size) - 1));
+	return shift > MAX_SHIFT ? -1 : shift - MIN_SHIFT;
+    }
+
+    @ManagedAttribute(description = "Buffers handed out from the pool")
+    public long getHits() {
+	return hits.get();
+    }
+
+    @ManagedAttribute(description = "Buffers that had to be allocated")
+    public long getMisses() {
+	return misses.get();
+    }
+
+    @ManagedAttribute(description = "Bytes allocated since start")
+    public long getAllocatedBytes() {
+	return allocatedBytes.get();
+    }
+
+    @ManagedAttribute(description = "Bytes in the shared pool, not counting thread caches")
+    public long getPooledBytes() {
+	return pooledBytes.get();
+    }
+
+    @ManagedAttribute(description = "Buffers handed out and not yet released")
+    public long getInUse() {
+	return inUse.get();
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+	LOG.info("{}", this);
+    }
+
+    @Override
+    public String toString() {
+	return String.format("Buffer pool: %d hits, %d misses, %d bytes allocated, %d bytes pooled, %d in use",
+		getHits(), getMisses(), getAllocatedBytes(), getPooledBytes(), getInUse());
+    }
+}
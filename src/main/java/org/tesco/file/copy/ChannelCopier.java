@@ -0,0 +1,64 @@
+package org.tesco.file.copy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Copies channel to channel with {@link FileChannel#transferTo}, which lets
+ * the kernel move the bytes with <tt>sendfile</tt> or
+ * <tt>copy_file_range</tt> without passing them through user space.
+ * <p>
+ * Should the transfer stop short or fail, for instance because the platform
+ * cannot transfer between these files, the rest is copied through a pooled
+ * buffer from where it stopped. With <tt>preallocate</tt> the target is
+ * sized to the source first, see {@link StreamCopier}.
+ */
+public class ChannelCopier implements FileCopier {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ChannelCopier.class);
+
+    /** The most handed to a single transfer, as some kernels cap it anyway. */
+    private static final long MAX_TRANSFER = 1L << 30;
+
+    private final BufferPool pool;
+    private final int bufferSize;
+    private final boolean preallocate;
+
+    public ChannelCopier(BufferPool pool, int bufferSize, boolean preallocate) {
+	this.pool = pool;
+	this.bufferSize = bufferSize;
+	this.preallocate = preallocate;
+    }
+
+    @Override
+    public long copy(File source, File target) throws IOException {
+	try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+		FileChannel out = StreamCopier.open(target, in.size(), preallocate)) {
+	    long size = in.size();
+	    long position = 0;
+	    try {
+		while (position < size) {
+		    long transferred = in.transferTo(position, Math.min(size - position, MAX_TRANSFER), out);
+		    if (transferred <= 0) {
+			break;
+		    }
+		    position += transferred;
+		}
+	    } catch (IOException e) {
+		LOG.debug("Cannot transfer {} to {} at {}, copying the rest through a buffer due {}", source, target, position, e.getMessage());
+	    }
+	    if (position < size) {
+		position = StreamCopier.copy(pool, bufferSize, in, out, position);
+	    }
+	    if (preallocate) {
+		out.truncate(position);
+	    }
+	    return position;
+	}
+    }
+}
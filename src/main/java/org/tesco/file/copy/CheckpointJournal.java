@@ -0,0 +1,146 @@
+package org.tesco.file.copy;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Small journal of the copies in progress: for every source, identified by
+ * path, size and modification time, the file being written and the offset
+ * up to which it is known to be on disk, with a checksum of the bytes just
+ * before that offset. The whole journal is rewritten, synced and atomically
+ * replaced on every change, which is cheap as it only holds the few copies
+ * running at a time. A journal that cannot be read is taken as empty, so the
+ * copies it knew of start afresh rather than keeping the producer from
+ * starting.
+ */
+public class CheckpointJournal {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CheckpointJournal.class);
+
+    private static final int MAGIC = 0x434b5031;
+
+    private final File file;
+    private final Map<String, Checkpoint> checkpoints = new LinkedHashMap<String, Checkpoint>();
+
+    public CheckpointJournal(File file) {
+	this.file = file;
+    }
+
+    public synchronized Checkpoint get(String key) {
+	return checkpoints.get(key);
+    }
+
+    public synchronized void put(String key, Checkpoint checkpoint) throws IOException {
+	checkpoints.put(key, checkpoint);
+	save();
+    }
+
+    public synchronized void remove(String key) throws IOException {
+	if (checkpoints.remove(key) != null) {
+	    save();
+	}
+    }
+
+    /**
+     * @return the absolute paths of the partly written files
+     */
+    public synchronized Set<String> getTargets() {
+	Set<String> targets = new HashSet<String>();
+	for (Checkpoint checkpoint : checkpoints.values()) {
+	    targets.add(checkpoint.getTarget());
+	}
+	return targets;
+    }
+
+    /**
+     * @return whether a checkpoint refers to the file as its partial copy
+     */
+    public synchronized boolean isTarget(String path) {
+	for (Checkpoint checkpoint : checkpoints.values()) {
+	    if (checkpoint.getTarget().equals(path)) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    public synchronized void load() {
+	checkpoints.clear();
+	if (!file.isFile()) {
+	    return;
+	}
+	try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+	    if (in.readInt() != MAGIC) {
+		throw new IOException("Not a checkpoint journal: " + file);
+	    }
+	    for (int n = in.readInt(); n > 0; n--) {
+		checkpoints.put(in.readUTF(), new Checkpoint(in.readUTF(), in.readLong(), in.readLong()));
+	    }
+	} catch (IOException e) {
+	    checkpoints.clear();
+	    LOG.warn("Cannot read checkpoint journal {}, copies in progress start afresh due {}", file, e.getMessage());
+	}
+    }
+
+    private void save() throws IOException {
+	File parent = file.getAbsoluteFile().getParentFile();
+	if (parent != null) {
+	    Files.createDirectories(parent.toPath());
+	}
+	File tmp = new File(file.getPath() + ".tmp");
+	try (FileOutputStream stream = new FileOutputStream(tmp);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+	    out.writeInt(MAGIC);
+	    out.writeInt(checkpoints.size());
+	    for (Map.Entry<String, Checkpoint> e : checkpoints.entrySet()) {
+		out.writeUTF(e.getKey());
+		out.writeUTF(e.getValue().target);
+		out.writeLong(e.getValue().offset);
+		out.writeLong(e.getValue().checksum);
+	    }
+	    out.flush();
+	    // on disk before it replaces the journal, so a crash leaves the old or the new one whole
+	    stream.getFD().sync();
+	}
+	Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static final class Checkpoint {
+	private final String target;
+	private final long offset;
+	private final long checksum;
+
+	public Checkpoint(String target, long offset, long checksum) {
+	    this.target = target;
+	    this.offset = offset;
+	    this.checksum = checksum;
+	}
+
+	public String getTarget() {
+	    return target;
+	}
+
+	public long getOffset() {
+	    return offset;
+	}
+
+	public long getChecksum() {
+	    return checksum;
+	}
+    }
+}
@@ -0,0 +1,75 @@
+package org.tesco.file.copy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.tesco.file.checksum.ContentChecksum;
+
+/**
+ * Copies through a pooled buffer like {@link StreamCopier}, adding every
+ * buffer to a {@link ContentChecksum} on its way, as a transfer or mapping
+ * would never show the bytes.
+ */
+public class ChecksumCopier implements FileCopier {
+
+    private final BufferPool pool;
+    private final int bufferSize;
+    private final boolean preallocate;
+
+    public ChecksumCopier(BufferPool pool, int bufferSize, boolean preallocate) {
+	this.pool = pool;
+	this.bufferSize = bufferSize;
+	this.preallocate = preallocate;
+    }
+
+    @Override
+    public long copy(File source, File target) throws IOException {
+	return copy(source, target, new ContentChecksum(false));
+    }
+
+    public long copy(File source, File target, ContentChecksum checksum) throws IOException {
+	try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+		FileChannel out = StreamCopier.open(target, in.size(), preallocate)) {
+	    ByteBuffer buffer = pool.acquire(bufferSize);
+	    try {
+		long position = 0;
+		while (in.read(buffer) >= 0) {
+		    ((Buffer) buffer).flip();
+		    checksum.update(buffer);
+		    while (buffer.hasRemaining()) {
+			position += out.write(buffer);
+		    }
+		    ((Buffer) buffer).clear();
+		}
+		if (preallocate) {
+		    out.truncate(position);
+		}
+		return position;
+	    } finally {
+		pool.release(buffer);
+	    }
+	}
+    }
+
+    /**
+     * Checksums a file that was written without passing through here.
+     */
+    public void read(File file, ContentChecksum checksum) throws IOException {
+	try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+	    ByteBuffer buffer = pool.acquire(bufferSize);
+	    try {
+		while (in.read(buffer) >= 0) {
+		    ((Buffer) buffer).flip();
+		    checksum.update(buffer);
+		    ((Buffer) buffer).clear();
+		}
+	    } finally {
+		pool.release(buffer);
+	    }
+	}
+    }
+}
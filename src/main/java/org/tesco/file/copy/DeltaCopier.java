@@ -0,0 +1,88 @@
+package org.tesco.file.copy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Updates a target that already exists in place, comparing it block by block
+ * with the source and writing only the blocks that differ, then cutting it to
+ * the source's length. Targets that do not exist yet, or are empty, go to the
+ * <tt>full</tt> copier.
+ * <p>
+ * Both versions are at hand on the same disk, so blocks are compared byte for
+ * byte rather than by signature. A changed block is written at its own
+ * offset, which means content that moved within the file is written again.
+ */
+public class DeltaCopier implements FileCopier {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DeltaCopier.class);
+
+    private final FileCopier full;
+    private final BufferPool pool;
+    private final int blockSize;
+
+    public DeltaCopier(FileCopier full, BufferPool pool, int blockSize) {
+	this.full = full;
+	this.pool = pool;
+	this.blockSize = blockSize;
+    }
+
+    @Override
+    public long copy(File source, File target) throws IOException {
+	if (!target.isFile() || target.length() == 0) {
+	    return full.copy(source, target);
+	}
+	try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+		FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+	    ByteBuffer fresh = pool.acquire(blockSize);
+	    ByteBuffer old = pool.acquire(blockSize);
+	    try {
+		long oldSize = out.size();
+		long position = 0;
+		long written = 0;
+		int length;
+		while ((length = read(in, fresh, position, blockSize)) > 0) {
+		    if (position + length > oldSize || read(out, old, position, length) != length || !old.equals(fresh)) {
+			while (fresh.hasRemaining()) {
+			    written += out.write(fresh, position + fresh.position());
+			}
+		    }
+		    position += length;
+		}
+		if (oldSize > position) {
+		    out.truncate(position);
+		}
+		LOG.debug("Updated {} in place, writing {} of {} bytes", target, written, position);
+		return position;
+	    } finally {
+		pool.release(old);
+		pool.release(fresh);
+	    }
+	}
+    }
+
+    /**
+     * Reads up to <tt>length</tt> bytes at <tt>position</tt>, leaving the
+     * buffer flipped.
+     *
+     * @return the bytes read, 0 at the end of the channel
+     */
+    private static int read(FileChannel channel, ByteBuffer buffer, long position, int length) throws IOException {
+	((Buffer) buffer).clear();
+	((Buffer) buffer).limit(length);
+	while (buffer.hasRemaining()) {
+	    if (channel.read(buffer, position + buffer.position()) < 0) {
+		break;
+	    }
+	}
+	((Buffer) buffer).flip();
+	return buffer.remaining();
+    }
+}
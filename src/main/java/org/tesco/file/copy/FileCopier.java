@@ -0,0 +1,15 @@
+package org.tesco.file.copy;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Copies the content of one file into another, replacing the target.
+ */
+public interface FileCopier {
+
+    /**
+     * @return the number of bytes copied
+     */
+    long copy(File source, File target) throws IOException;
+}
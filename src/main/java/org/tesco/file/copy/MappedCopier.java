@@ -0,0 +1,119 @@
+package org.tesco.file.copy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Copies very large files by mapping source and target a window at a time
+ * and copying memory to memory. Each window is unmapped as soon as it is
+ * copied, so the address space in use never exceeds two windows whatever
+ * the size of the file.
+ * <p>
+ * The source must not shrink while it is copied, as touching a mapped page
+ * past its end is fatal to the thread.
+ */
+public class MappedCopier implements FileCopier {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappedCopier.class);
+
+    private static final Unmapper UNMAPPER = Unmapper.create();
+
+    private final long window;
+
+    public MappedCopier(long window) {
+	if (window <= 0 || window > Integer.MAX_VALUE) {
+	    throw new IllegalArgumentException("The mapped window must be between 1 byte and 2 GB but was " + window);
+	}
+	this.window = window;
+    }
+
+    @Override
+    public long copy(File source, File target) throws IOException {
+	try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+		RandomAccessFile raf = new RandomAccessFile(target, "rw");
+		FileChannel out = raf.getChannel()) {
+	    long size = in.size();
+	    raf.setLength(size);
+	    for (long position = 0; position < size; position += window) {
+		long length = Math.min(window, size - position);
+		MappedByteBuffer from = in.map(FileChannel.MapMode.READ_ONLY, position, length);
+		MappedByteBuffer to = null;
+		try {
+		    to = out.map(FileChannel.MapMode.READ_WRITE, position, length);
+		    to.put(from);
+		} finally {
+		    UNMAPPER.unmap(from);
+		    if (to != null) {
+			UNMAPPER.unmap(to);
+		    }
+		}
+	    }
+	    return size;
+	}
+    }
+
+    /**
+     * Releases a mapping right away instead of when the buffer is collected,
+     * through whichever internal API the running JVM offers.
+     */
+    private static final class Unmapper {
+
+	private final Object unsafe;
+	private final Method invokeCleaner;
+	private final Method cleaner;
+	private final Method clean;
+
+	private Unmapper(Object unsafe, Method invokeCleaner, Method cleaner, Method clean) {
+	    this.unsafe = unsafe;
+	    this.invokeCleaner = invokeCleaner;
+	    this.cleaner = cleaner;
+	    this.clean = clean;
+	}
+
+	static Unmapper create() {
+	    try {
+		// Java 9 and later
+		Class<?> type = Class.forName("sun.misc.Unsafe");
+		Field field = type.getDeclaredField("theUnsafe");
+		field.setAccessible(true);
+		return new Unmapper(field.get(null), type.getMethod("invokeCleaner", ByteBuffer.class), null, null);
+	    } catch (Exception e) {
+		// fall through
+	    }
+	    try {
+		// Java 8
+		Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+		Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+		return new Unmapper(null, null, cleaner, clean);
+	    } catch (Exception e) {
+		LOG.warn("Cannot unmap buffers on this JVM, mapped windows are released by the garbage collector");
+		return new Unmapper(null, null, null, null);
+	    }
+	}
+
+	void unmap(MappedByteBuffer buffer) {
+	    try {
+		if (invokeCleaner != null) {
+		    invokeCleaner.invoke(unsafe, buffer);
+		} else if (cleaner != null) {
+		    Object c = cleaner.invoke(buffer);
+		    if (c != null) {
+			clean.invoke(c);
+		    }
+		}
+	    } catch (Exception e) {
+		LOG.debug("Cannot unmap buffer due {}", e.getMessage());
+	    }
+	}
+    }
+}
@@ -0,0 +1,119 @@
+package org.tesco.file.copy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Copies one file as <tt>parts</tt> ranges at once, each read and written
+ * with positional I/O by a worker, so a single huge file keeps several I/O
+ * requests in flight. The copy succeeds only if every range does; if one
+ * fails the others are cancelled and the target must be thrown away, which
+ * <tt>atomicWrite</tt> does. The endpoint only copies in ranges under
+ * <tt>atomicWrite</tt>, as the target has its full length while the ranges
+ * are still being filled in.
+ */
+public class ParallelCopier implements FileCopier {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelCopier.class);
+
+    private final ExecutorService workers;
+    private final int parts;
+    private final BufferPool pool;
+    private final int bufferSize;
+
+    public ParallelCopier(ExecutorService workers, int parts, BufferPool pool, int bufferSize) {
+	this.workers = workers;
+	this.parts = Math.max(1, parts);
+	this.pool = pool;
+	this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public long copy(File source, File target) throws IOException {
+	long start = System.nanoTime();
+	try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+		RandomAccessFile raf = new RandomAccessFile(target, "rw");
+		FileChannel out = raf.getChannel()) {
+	    final long size = in.size();
+	    raf.setLength(size);
+
+	    long partSize = (size + parts - 1) / parts;
+	    List<Future<Long>> futures = new ArrayList<Future<Long>>();
+	    for (long position = 0; position < size; position += partSize) {
+		futures.add(workers.submit(new Part(in, out, position, Math.min(size, position + partSize))));
+	    }
+	    try {
+		for (Future<Long> future : futures) {
+		    future.get();
+		}
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		throw new InterruptedIOException("Interrupted copying " + source + " to " + target);
+	    } catch (ExecutionException e) {
+		throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+	    } finally {
+		for (Future<Long> future : futures) {
+		    future.cancel(true);
+		}
+	    }
+
+	    long millis = Math.max(1, (System.nanoTime() - start) / 1000000);
+	    LOG.info("Copied {} bytes from {} in {} parts in {} ms, {} MB/s", size, source, futures.size(), millis, size * 1000 / millis / (1024 * 1024));
+	    return size;
+	}
+    }
+
+    private final class Part implements Callable<Long> {
+	private final FileChannel in;
+	private final FileChannel out;
+	private final long from;
+	private final long to;
+
+	Part(FileChannel in, FileChannel out, long from, long to) {
+	    this.in = in;
+	    this.out = out;
+	    this.from = from;
+	    this.to = to;
+	}
+
+	@Override
+	public Long call() throws IOException {
+	    ByteBuffer buffer = pool.acquire(bufferSize);
+	    try {
+		long position = from;
+		while (position < to) {
+		    ((Buffer) buffer).clear();
+		    ((Buffer) buffer).limit((int) Math.min(buffer.capacity(), to - position));
+		    int read = in.read(buffer, position);
+		    if (read < 0) {
+			throw new IOException("Source shrank to " + position + " bytes while it was copied");
+		    }
+		    ((Buffer) buffer).flip();
+		    long at = position;
+		    while (buffer.hasRemaining()) {
+			at += out.write(buffer, at);
+		    }
+		    position += read;
+		}
+		return to - from;
+	    } finally {
+		pool.release(buffer);
+	    }
+	}
+    }
+}
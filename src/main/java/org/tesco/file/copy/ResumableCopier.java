@@ -0,0 +1,130 @@
+package org.tesco.file.copy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tesco.file.copy.CheckpointJournal.Checkpoint;
+
+/**
+ * Copies in steps of <tt>interval</tt> bytes, forcing each step to disk and
+ * recording it in a {@link CheckpointJournal}, so a copy cut short by a crash
+ * carries on from its last checkpoint instead of from the start.
+ * <p>
+ * Before resuming, the checksum of the {@link #TAIL} bytes before the
+ * checkpoint is read back from the partial file and compared with the
+ * journal; a partial file that was changed or cut shorter is copied afresh.
+ * A partial file written under an earlier temp name is renamed to the new
+ * one first.
+ */
+public class ResumableCopier implements FileCopier {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResumableCopier.class);
+
+    static final int TAIL = 64 * 1024;
+
+    private final CheckpointJournal journal;
+    private final long interval;
+    private final BufferPool pool;
+    private final boolean preallocate;
+
+    public ResumableCopier(CheckpointJournal journal, long interval, BufferPool pool, boolean preallocate) {
+	this.journal = journal;
+	this.interval = interval;
+	this.pool = pool;
+	this.preallocate = preallocate;
+    }
+
+    @Override
+    public long copy(File source, File target) throws IOException {
+	String key = source.getAbsolutePath() + ":" + source.length() + ":" + source.lastModified();
+	target = target.getAbsoluteFile();
+	long position = resume(key, target);
+
+	try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+		RandomAccessFile raf = new RandomAccessFile(target, "rw");
+		FileChannel out = raf.getChannel()) {
+	    long size = in.size();
+	    if (position == 0) {
+		raf.setLength(0);
+		if (preallocate) {
+		    raf.setLength(size);
+		}
+	    }
+	    while (position < size) {
+		long end = Math.min(size, position + interval);
+		out.position(position);
+		while (position < end) {
+		    long transferred = in.transferTo(position, end - position, out);
+		    if (transferred <= 0) {
+			throw new IOException("Source " + source + " shrank to " + position + " bytes while it was copied");
+		    }
+		    position += transferred;
+		}
+		if (position < size) {
+		    // the data first, so the journal never runs ahead of the disk
+		    out.force(false);
+		    journal.put(key, new Checkpoint(target.getPath(), position, tailChecksum(out, position)));
+		}
+	    }
+	    raf.setLength(size);
+	}
+	journal.remove(key);
+	return position;
+    }
+
+    /**
+     * @return the offset to carry on from, 0 if there is nothing to resume
+     */
+    private long resume(String key, File target) throws IOException {
+	Checkpoint checkpoint = journal.get(key);
+	if (checkpoint == null) {
+	    return 0;
+	}
+	File partial = new File(checkpoint.getTarget());
+	try {
+	    if (!partial.equals(target)) {
+		Files.move(partial.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	    }
+	    try (FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.READ)) {
+		if (channel.size() >= checkpoint.getOffset() && tailChecksum(channel, checkpoint.getOffset()) == checkpoint.getChecksum()) {
+		    LOG.info("Resuming copy to {} at {} bytes", target, checkpoint.getOffset());
+		    return checkpoint.getOffset();
+		}
+	    }
+	    LOG.info("Partial file {} does not match its checkpoint, copying afresh", target);
+	} catch (IOException e) {
+	    LOG.info("Cannot resume copy to {}, copying afresh due {}", target, e.getMessage());
+	}
+	journal.remove(key);
+	return 0;
+    }
+
+    private long tailChecksum(FileChannel channel, long offset) throws IOException {
+	ByteBuffer buffer = pool.acquire(TAIL);
+	try {
+	    long from = Math.max(0, offset - TAIL);
+	    ((Buffer) buffer).limit((int) (offset - from));
+	    while (buffer.hasRemaining()) {
+		if (channel.read(buffer, from + buffer.position()) < 0) {
+		    throw new IOException("Partial file is shorter than its checkpoint");
+		}
+	    }
+	    ((Buffer) buffer).flip();
+	    CRC32 crc = new CRC32();
+	    crc.update(buffer);
+	    return crc.getValue();
+	} finally {
+	    pool.release(buffer);
+	}
+    }
+}
@@ -0,0 +1,88 @@
+package org.tesco.file.copy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Copies through a buffer taken from a {@link BufferPool}, reading and
+ * writing the same way the <tt>file</tt> component streams a body.
+ * <p>
+ * With <tt>preallocate</tt> the target is sized to the source before the
+ * copy and trimmed to what was copied after it, so the copy never grows the
+ * file.
+ */
+public class StreamCopier implements FileCopier {
+
+    private final BufferPool pool;
+    private final int bufferSize;
+    private final boolean preallocate;
+
+    public StreamCopier(BufferPool pool, int bufferSize, boolean preallocate) {
+	this.pool = pool;
+	this.bufferSize = bufferSize;
+	this.preallocate = preallocate;
+    }
+
+    @Override
+    public long copy(File source, File target) throws IOException {
+	try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+		FileChannel out = open(target, in.size(), preallocate)) {
+	    long position = copy(pool, bufferSize, in, out, 0);
+	    if (preallocate) {
+		out.truncate(position);
+	    }
+	    return position;
+	}
+    }
+
+    /**
+     * Opens <tt>target</tt> for writing, empty, or with <tt>preallocate</tt>
+     * already <tt>size</tt> bytes long. Java cannot reserve the blocks
+     * themselves, but writes within the file's size leave its size alone, and
+     * the file system sees the whole extent before it allocates any of it.
+     * The caller trims the file to the length copied.
+     */
+    static FileChannel open(File target, long size, boolean preallocate) throws IOException {
+	if (!preallocate) {
+	    return FileChannel.open(target.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+	}
+	RandomAccessFile raf = new RandomAccessFile(target, "rw");
+	try {
+	    raf.setLength(size);
+	    return raf.getChannel();
+	} catch (IOException e) {
+	    raf.close();
+	    throw e;
+	}
+    }
+
+    /**
+     * Copies from <tt>position</tt> to the end of <tt>in</tt> into the same
+     * position of <tt>out</tt>.
+     *
+     * @return the position copied up to
+     */
+    static long copy(BufferPool pool, int bufferSize, FileChannel in, FileChannel out, long position) throws IOException {
+	ByteBuffer buffer = pool.acquire(bufferSize);
+	try {
+	    in.position(position);
+	    out.position(position);
+	    // through Buffer, so it also links on Java 8 when built on a later JDK
+	    while (in.read(buffer) >= 0) {
+		((Buffer) buffer).flip();
+		while (buffer.hasRemaining()) {
+		    position += out.write(buffer);
+		}
+		((Buffer) buffer).clear();
+	    }
+	    return position;
+	} finally {
+	    pool.release(buffer);
+	}
+    }
+}
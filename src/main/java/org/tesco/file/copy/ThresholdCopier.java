@@ -0,0 +1,28 @@
+package org.tesco.file.copy;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Hands files up to a size to one copier and larger files to another.
+ */
+public class ThresholdCopier implements FileCopier {
+
+    private final FileCopier small;
+    private final FileCopier large;
+    private final long threshold;
+
+    /**
+     * @param threshold files of at least this many bytes go to <tt>large</tt>
+     */
+    public ThresholdCopier(FileCopier small, FileCopier large, long threshold) {
+	this.small = small;
+	this.large = large;
+	this.threshold = threshold;
+    }
+
+    @Override
+    public long copy(File source, File target) throws IOException {
+	return source.length() >= threshold ? large.copy(source, target) : small.copy(source, target);
+    }
+}
@@ -0,0 +1,96 @@
+package org.tesco.file.dedup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.support.ServiceSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tesco.file.idempotent.MappedIdempotentRepository;
+
+/**
+ * Content addressed store that keeps every distinct content once, as
+ * <tt>root/ab/abcdef...</tt> named after its SHA-256, with the written files
+ * hard links to it. The hashes stored are kept in a
+ * {@link MappedIdempotentRepository}, so telling a new content from a
+ * duplicate is a lookup in a memory mapped table, not a read of any file.
+ * <p>
+ * The store must be on the same file store as the files it holds.
+ */
+public class BlobStore extends ServiceSupport {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BlobStore.class);
+
+    private final File root;
+    private final MappedIdempotentRepository index;
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong savedBytes = new AtomicLong();
+
+    public BlobStore(File root, long indexCapacity) {
+	this.root = root;
+	this.index = new MappedIdempotentRepository(new File(root, ".index"), indexCapacity);
+    }
+
+    /**
+     * Files replaced by a link to content already stored.
+     */
+    public long getDuplicates() {
+	return duplicates.get();
+    }
+
+    /**
+     * Bytes those files would have taken.
+     */
+    public long getSavedBytes() {
+	return savedBytes.get();
+    }
+
+    /**
+     * Takes a file just written, with the given SHA-256. Content not stored
+     * yet is stored by linking the file into the store; for a duplicate the
+     * file is swapped for a link to the stored content.
+     *
+     * @return <tt>true</tt> if the file was a duplicate
+     */
+    public boolean store(File file, String sha256) throws IOException {
+	File blob = new File(new File(root, sha256.substring(0, 2)), sha256);
+	if (!index.contains(sha256) || !blob.exists()) {
+	    Files.createDirectories(blob.getParentFile().toPath());
+	    try {
+		Files.createLink(blob.toPath(), file.toPath());
+		index.add(sha256);
+		return false;
+	    } catch (FileAlreadyExistsException e) {
+		// stored meanwhile, or before the index was kept
+		index.add(sha256);
+	    }
+	}
+
+	long length = file.length();
+	Path link = new File(file.getAbsoluteFile().getParentFile(), "." + file.getName() + ".dedup").toPath();
+	Files.deleteIfExists(link);
+	// link first, so a failure leaves the written file as it is
+	Files.createLink(link, blob.toPath());
+	Files.move(link, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	duplicates.incrementAndGet();
+	savedBytes.addAndGet(length);
+	LOG.trace("Linked duplicate {} to {}", file, blob);
+	return true;
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+	Files.createDirectories(root.toPath());
+	index.start();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+	index.stop();
+    }
+}
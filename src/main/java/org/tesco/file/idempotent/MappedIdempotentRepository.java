@@ -0,0 +1,303 @@
+package org.tesco.file.idempotent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.camel.api.management.ManagedAttribute;
+import org.apache.camel.api.management.ManagedOperation;
+import org.apache.camel.api.management.ManagedResource;
+import org.apache.camel.spi.IdempotentRepository;
+import org.apache.camel.support.ServiceSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Idempotent repository kept in a memory-mapped, open-addressing hash table on
+ * disk. Nothing but the mapping lives on the heap, so lookups are O(1) with no
+ * GC pressure, the table survives restarts and it can hold tens of millions of
+ * keys.
+ * <p>
+ * Each key is stored as a 128 bit fingerprint in a 16 byte slot, probed
+ * linearly. The table doubles when it passes {@link #MAX_LOAD} and is rebuilt
+ * in place when removals leave too many tombstones behind.
+ */
+@ManagedResource(description = "Memory mapped idempotent repository")
+public class MappedIdempotentRepository extends ServiceSupport implements IdempotentRepository<String> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappedIdempotentRepository.class);
+
+    private static final long MAGIC = 0x4d4150494450524fL;
+    private static final int VERSION = 1;
+    private static final int HEADER = 64;
+    private static final int SLOT = 16;
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT = 1L << SEGMENT_SHIFT;
+    private static final long MAX_CAPACITY = 1L << 30;
+    private static final double MAX_LOAD = 0.7;
+
+    private static final int CAPACITY_OFFSET = 16;
+    private static final int SIZE_OFFSET = 24;
+    private static final int TOMBSTONES_OFFSET = 32;
+
+    private final File file;
+    private final long initialCapacity;
+    private MappedByteBuffer[] segments;
+    private long capacity;
+    private long size;
+    private long tombstones;
+
+    public MappedIdempotentRepository(File file, long initialCapacity) {
+	this.file = file;
+	this.initialCapacity = Math.min(MAX_CAPACITY, Math.max(16, Long.highestOneBit(Math.max(1, initialCapacity - 1)) << 1));
+    }
+
+    public File getFile() {
+	return file;
+    }
+
+    @ManagedAttribute(description = "Number of keys")
+    public synchronized long getSize() {
+	return size;
+    }
+
+    @ManagedAttribute(description = "Number of slots in the table")
+    public synchronized long getCapacity() {
+	return capacity;
+    }
+
+    @Override
+    @ManagedOperation(description = "Adds the key to the store")
+    public synchronized boolean add(String key) {
+	if (size + tombstones + 1 > capacity * MAX_LOAD) {
+	    // lots of removals only need a rebuild, a full table needs to grow
+	    rebuild(size + 1 > capacity * MAX_LOAD / 2 ? capacity << 1 : capacity);
+	}
+	long h1 = hash1(key);
+	long h2 = hash2(key);
+	long free = -1;
+	for (long i = index(h1, h2);; i = (i + 1) & (capacity - 1)) {
+	    long s1 = getLong(slot(i));
+	    long s2 = getLong(slot(i) + 8);
+	    if (s1 == h1 && s2 == h2) {
+		return false;
+	    }
+	    if (s1 == 0) {
+		if (s2 == 0) {
+		    if (free < 0) {
+			free = i;
+		    } else {
+			tombstones--;
+		    }
+		    break;
+		} else if (free < 0) {
+		    free = i;
+		}
+	    }
+	}
+	putLong(slot(free), h1);
+	putLong(slot(free) + 8, h2);
+	size++;
+	writeCounts();
+	return true;
+    }
+
+    @Override
+    @ManagedOperation(description = "Does the store contain the given key")
+    public synchronized boolean contains(String key) {
+	return find(hash1(key), hash2(key)) >= 0;
+    }
+
+    @Override
+    @ManagedOperation(description = "Remove the key from the store")
+    public synchronized boolean remove(String key) {
+	long i = find(hash1(key), hash2(key));
+	if (i < 0) {
+	    return false;
+	}
+	// tombstone, so probe chains running through this slot stay intact
+	putLong(slot(i), 0);
+	putLong(slot(i) + 8, 1);
+	size--;
+	tombstones++;
+	writeCounts();
+	return true;
+    }
+
+    @Override
+    public boolean confirm(String key) {
+	return true;
+    }
+
+    @Override
+    @ManagedOperation(description = "Clear the store")
+    public synchronized void clear() {
+	File target = new File(file.getPath() + ".rebuild");
+	try {
+	    // never truncate the file under the live mapping
+	    create(target, initialCapacity);
+	    Files.move(target.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	} catch (IOException e) {
+	    throw new IllegalStateException("Cannot clear idempotent store " + file, e);
+	}
+	open();
+    }
+
+    @Override
+    protected synchronized void doStart() throws Exception {
+	if (!file.exists()) {
+	    create(file, initialCapacity);
+	}
+	open();
+	LOG.debug("Opened idempotent store {} with {} keys in {} slots", file, size, capacity);
+    }
+
+    @Override
+    protected synchronized void doStop() throws Exception {
+	if (segments != null) {
+	    for (MappedByteBuffer segment : segments) {
+		segment.force();
+	    }
+	    segments = null;
+	}
+    }
+
+    private long find(long h1, long h2) {
+	for (long i = index(h1, h2);; i = (i + 1) & (capacity - 1)) {
+	    long s1 = getLong(slot(i));
+	    long s2 = getLong(slot(i) + 8);
+	    if (s1 == h1 && s2 == h2) {
+		return i;
+	    }
+	    if (s1 == 0 && s2 == 0) {
+		return -1;
+	    }
+	}
+    }
+
+    private long index(long h1, long h2) {
+	return (h1 ^ (h2 >>> 17)) & (capacity - 1);
+    }
+
+    private static long slot(long index) {
+	return HEADER + index * SLOT;
+    }
+
+    private long getLong(long offset) {
+	return segments[(int) (offset >>> SEGMENT_SHIFT)].getLong((int) (offset & (SEGMENT - 1)));
+    }
+
+    private void putLong(long offset, long value) {
+	segments[(int) (offset >>> SEGMENT_SHIFT)].putLong((int) (offset & (SEGMENT - 1)), value);
+    }
+
+    private void writeCounts() {
+	segments[0].putLong(SIZE_OFFSET, size);
+	segments[0].putLong(TOMBSTONES_OFFSET, tombstones);
+    }
+
+    private void rebuild(long newCapacity) {
+	if (newCapacity > MAX_CAPACITY) {
+	    throw new IllegalStateException("Idempotent store " + file + " is full at " + size + " keys");
+	}
+	File target = new File(file.getPath() + ".rebuild");
+	try {
+	    create(target, newCapacity);
+	    MappedIdempotentRepository rebuilt = new MappedIdempotentRepository(target, newCapacity);
+	    rebuilt.open();
+	    for (long i = 0; i < capacity; i++) {
+		long s1 = getLong(slot(i));
+		if (s1 != 0) {
+		    rebuilt.insert(s1, getLong(slot(i) + 8));
+		}
+	    }
+	    rebuilt.writeCounts();
+	    rebuilt.doStop();
+	    Files.move(target.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	} catch (Exception e) {
+	    throw new IllegalStateException("Cannot rebuild idempotent store " + file, e);
+	}
+	open();
+	LOG.debug("Rebuilt idempotent store {} with {} keys in {} slots", file, size, capacity);
+    }
+
+    private void insert(long h1, long h2) {
+	long i = index(h1, h2);
+	while (getLong(slot(i)) != 0) {
+	    i = (i + 1) & (capacity - 1);
+	}
+	putLong(slot(i), h1);
+	putLong(slot(i) + 8, h2);
+	size++;
+    }
+
+    private void open() {
+	try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+	    long length = channel.size();
+	    MappedByteBuffer[] mapped = new MappedByteBuffer[(int) ((length + SEGMENT - 1) >>> SEGMENT_SHIFT)];
+	    for (int i = 0; i < mapped.length; i++) {
+		long position = (long) i << SEGMENT_SHIFT;
+		mapped[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.min(SEGMENT, length - position));
+	    }
+	    if (mapped.length == 0 || mapped[0].getLong(0) != MAGIC || mapped[0].getInt(8) != VERSION) {
+		throw new IllegalStateException("Not an idempotent store: " + file);
+	    }
+	    segments = mapped;
+	    capacity = mapped[0].getLong(CAPACITY_OFFSET);
+	    size = mapped[0].getLong(SIZE_OFFSET);
+	    tombstones = mapped[0].getLong(TOMBSTONES_OFFSET);
+	    if (length != slot(capacity)) {
+		throw new IllegalStateException("Idempotent store " + file + " is truncated");
+	    }
+	} catch (IOException e) {
+	    throw new IllegalStateException("Cannot open idempotent store " + file, e);
+	}
+    }
+
+    private static void create(File file, long capacity) throws IOException {
+	File parent = file.getAbsoluteFile().getParentFile();
+	if (parent != null) {
+	    Files.createDirectories(parent.toPath());
+	}
+	try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+	    // a sparse file, the slots read back as zero which is empty
+	    raf.setLength(0);
+	    raf.setLength(slot(capacity));
+	    raf.writeLong(MAGIC);
+	    raf.writeInt(VERSION);
+	    raf.seek(CAPACITY_OFFSET);
+	    raf.writeLong(capacity);
+	}
+    }
+
+    private static long hash1(String key) {
+	long h = 0xcbf29ce484222325L;
+	for (int i = 0; i < key.length(); i++) {
+	    h = (h ^ key.charAt(i)) * 0x100000001b3L;
+	}
+	h = mix(h ^ key.length());
+	// zero marks empty and tombstone slots
+	return h == 0 ? 1 : h;
+    }
+
+    private static long hash2(String key) {
+	long h = 0x9e3779b97f4a7c15L;
+	for (int i = 0; i < key.length(); i++) {
+	    h = Long.rotateLeft(h ^ key.charAt(i), 27) * 0xc2b2ae3d27d4eb4fL;
+	}
+	return mix(h + key.length());
+    }
+
+    private static long mix(long h) {
+	h ^= h >>> 33;
+	h *= 0xff51afd7ed558ccdL;
+	h ^= h >>> 33;
+	h *= 0xc4ceb9fe1a85ec53L;
+	h ^= h >>> 33;
+	return h;
+    }
+}
@@ -0,0 +1,30 @@
+package org.tesco.file.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Files and bytes that have entered a route and not yet completed.
+ */
+public class InFlightGauge {
+
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+
+    public void begin(long length) {
+	files.incrementAndGet();
+	bytes.addAndGet(length);
+    }
+
+    public void end(long length) {
+	files.decrementAndGet();
+	bytes.addAndGet(-length);
+    }
+
+    public long getFiles() {
+	return files.get();
+    }
+
+    public long getBytes() {
+	return bytes.get();
+    }
+}
@@ -0,0 +1,89 @@
+package org.tesco.file.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.api.management.ManagedAttribute;
+import org.apache.camel.api.management.ManagedOperation;
+import org.apache.camel.api.management.ManagedResource;
+import org.apache.camel.support.ServiceSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counts the files and bytes that pass it in a route. Placed at the end of a
+ * route it measures delivered throughput; added to the CamelContext as a
+ * service it is exposed over JMX.
+ */
+@ManagedResource(description = "File throughput")
+public class ThroughputCounter extends ServiceSupport implements Processor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ThroughputCounter.class);
+
+    private final String name;
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private volatile long started = System.currentTimeMillis();
+
+    public ThroughputCounter(String name) {
+	this.name = name;
+    }
+
+    @Override
+    public void process(Exchange exchange) throws Exception {
+	files.incrementAndGet();
+	Long length = exchange.getIn().getHeader(Exchange.FILE_LENGTH, Long.class);
+	if (length != null) {
+	    bytes.addAndGet(length);
+	}
+    }
+
+    @ManagedAttribute(description = "Name")
+    public String getName() {
+	return name;
+    }
+
+    @ManagedAttribute(description = "Files passed")
+    public long getFiles() {
+	return files.get();
+    }
+
+    @ManagedAttribute(description = "Bytes passed")
+    public long getBytes() {
+	return bytes.get();
+    }
+
+    @ManagedAttribute(description = "Files per second since start or reset")
+    public double getFilesPerSecond() {
+	return files.get() * 1000d / Math.max(1, System.currentTimeMillis() - started);
+    }
+
+    @ManagedAttribute(description = "Bytes per second since start or reset")
+    public double getBytesPerSecond() {
+	return bytes.get() * 1000d / Math.max(1, System.currentTimeMillis() - started);
+    }
+
+    @ManagedOperation(description = "Reset counters")
+    public void reset() {
+	files.set(0);
+	bytes.set(0);
+	started = System.currentTimeMillis();
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+	reset();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+	LOG.info("{}", this);
+    }
+
+    @Override
+    public String toString() {
+	return String.format("%s: %d files, %d bytes, %.1f files/s, %.1f bytes/s",
+		name, getFiles(), getBytes(), getFilesPerSecond(), getBytesPerSecond());
+    }
+}
@@ -0,0 +1,110 @@
+package org.tesco.file.body;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.util.FileUtil;
+import org.tesco.file.component.DirectoryComponent;
+
+/**
+ * Routes a sparse file far larger than the heap through a streaming body.
+ * Run with <tt>mvn test -Pintegration</tt>, which gives the test JVM a
+ * 256 MB heap; <tt>-Dit.size</tt> sets the size of the file, 50 GB by
+ * default.
+ */
+public class StreamingFileBodyIT extends TestCase {
+
+    private static final long SIZE = Long.getLong("it.size", 50L * 1024 * 1024 * 1024);
+
+    private File base;
+    private DefaultCamelContext context;
+
+    @Override
+    protected void setUp() throws Exception {
+	base = new File("target/it/streaming-body");
+	FileUtil.removeDir(base);
+	new File(base, "in").mkdirs();
+	context = new DefaultCamelContext();
+	context.addComponent("dir", new DirectoryComponent());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+	context.stop();
+	FileUtil.removeDir(base);
+    }
+
+    public void testHugeFileStaysOffTheHeap() throws Exception {
+	assertTrue("the file must not fit on the heap", SIZE > Runtime.getRuntime().maxMemory());
+	File input = new File(base, "in/huge.bin");
+	try (RandomAccessFile file = new RandomAccessFile(input, "rw")) {
+	    file.setLength(SIZE);
+	}
+
+	final AtomicLong read = new AtomicLong();
+	final AtomicReference<Object> body = new AtomicReference<Object>();
+	final AtomicReference<Exception> refused = new AtomicReference<Exception>();
+	final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+	final CountDownLatch done = new CountDownLatch(1);
+	context.addRoutes(new RouteBuilder() {
+	    @Override
+	    public void configure() {
+		onException(Exception.class).handled(true).process(new Processor() {
+		    @Override
+		    public void process(Exchange exchange) throws Exception {
+			failure.set(exchange.getProperty(Exchange.EXCEPTION_CAUGHT, Exception.class));
+			done.countDown();
+		    }
+		});
+		from("dir://" + base + "/in?mode=stream&streamingBody=true&delete=true&preMove=.inprogress&initialDelay=0")
+			.process(new Processor() {
+			    @Override
+			    public void process(Exchange exchange) throws Exception {
+				body.set(exchange.getIn().getBody());
+				try {
+				    exchange.getIn().getBody(String.class);
+				} catch (Exception e) {
+				    refused.set(e);
+				}
+				byte[] buffer = new byte[1024 * 1024];
+				try (InputStream in = exchange.getIn().getBody(InputStream.class)) {
+				    for (int n; (n = in.read(buffer)) != -1;) {
+					read.addAndGet(n);
+				    }
+				}
+			    }
+			})
+			.to("dir://" + base + "/out?link=true")
+			.process(new Processor() {
+			    @Override
+			    public void process(Exchange exchange) throws Exception {
+				done.countDown();
+			    }
+			});
+	    }
+	});
+	context.start();
+
+	assertTrue("the file was not routed", done.await(30, TimeUnit.MINUTES));
+	if (failure.get() != null) {
+	    throw failure.get();
+	}
+	// the body was set again after the preMove rename
+	assertTrue("body was " + body.get(), body.get() instanceof StreamingFileBody);
+	assertEquals(new File(base, "in/.inprogress/huge.bin").getAbsoluteFile(), ((StreamingFileBody) body.get()).getFile().getAbsoluteFile());
+	assertNotNull("conversion to String was not refused", refused.get());
+	assertEquals(SIZE, read.get());
+	assertEquals(SIZE, new File(base, "out/huge.bin").length());
+    }
+}
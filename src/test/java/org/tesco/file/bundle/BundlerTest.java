@@ -0,0 +1,156 @@
+package org.tesco.file.bundle;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.camel.util.FileUtil;
+
+public class BundlerTest extends TestCase {
+
+    private File base;
+    private File directory;
+    private final List<String> done = new ArrayList<String>();
+
+    @Override
+    protected void setUp() throws Exception {
+	base = new File("target/test/bundler");
+	FileUtil.removeDir(base);
+	directory = new File(base, "out");
+	new File(base, "in").mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+	FileUtil.removeDir(base);
+    }
+
+    private Bundler.Completion completion(final String name) {
+	return new Bundler.Completion() {
+	    @Override
+	    public void done(File bundle, Exception cause) {
+		done.add(name + (cause == null ? " in " + bundle.getName() : " failed"));
+	    }
+	};
+    }
+
+    private File source(String name, String content) throws IOException {
+	File file = new File(base, "in/" + name);
+	Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+	return file;
+    }
+
+    private File[] bundles(String extension) {
+	File[] bundles = directory.listFiles();
+	List<File> found = new ArrayList<File>();
+	for (File file : bundles) {
+	    if (file.getName().endsWith(extension)) {
+		found.add(file);
+	    }
+	}
+	File[] sorted = found.toArray(new File[found.size()]);
+	Arrays.sort(sorted);
+	return sorted;
+    }
+
+    /**
+     * Checks every index line against the content at its offset.
+     */
+    private void assertIndex(File bundle, String... entries) throws IOException {
+	List<String> lines = Files.readAllLines(new File(bundle.getPath() + ".idx").toPath(), StandardCharsets.UTF_8);
+	assertEquals(entries.length, lines.size());
+	try (RandomAccessFile file = new RandomAccessFile(bundle, "r")) {
+	    for (int i = 0; i < entries.length; i++) {
+		String[] line = lines.get(i).split(" ", 3);
+		assertEquals(entries[i], line[2]);
+		byte[] content = new byte[Integer.parseInt(line[1])];
+		file.seek(Long.parseLong(line[0]));
+		file.readFully(content);
+		assertEquals("content of " + entries[i], new String(content, StandardCharsets.UTF_8));
+	    }
+	}
+    }
+
+    public void testEntriesCompleteOnceTheBundleCloses() throws Exception {
+	Bundler bundler = new Bundler(directory, BundleFormat.TAR, 1 << 20, 60000);
+	bundler.deleteLeftovers();
+	bundler.append("a", 0, source("a", "content of a"), null, completion("a"));
+	bundler.append("b", 0, null, "content of b".getBytes(StandardCharsets.UTF_8), completion("b"));
+	assertTrue(done.isEmpty());
+	assertEquals(0, bundles(".tar").length);
+
+	bundler.closeExpired(true);
+	File[] bundles = bundles(".tar");
+	assertEquals(1, bundles.length);
+	assertEquals(Arrays.asList("a in " + bundles[0].getName(), "b in " + bundles[0].getName()), done);
+	assertIndex(bundles[0], "a", "b");
+	assertEquals(1, bundler.getBundles());
+	assertEquals(2, bundler.getEntries());
+    }
+
+    public void testSameNameStartsTheNextBundle() throws Exception {
+	Bundler bundler = new Bundler(directory, BundleFormat.ZIP, 1 << 20, 60000);
+	bundler.deleteLeftovers();
+	bundler.append("a", 0, source("a", "content of a"), null, completion("a"));
+	bundler.append("a", 0, source("a", "content of a"), null, completion("a again"));
+	assertEquals(Arrays.asList("a in " + bundles(".zip")[0].getName()), done);
+
+	bundler.closeExpired(true);
+	File[] bundles = bundles(".zip");
+	assertEquals(2, bundles.length);
+	assertIndex(bundles[0], "a");
+	assertIndex(bundles[1], "a");
+    }
+
+    public void testFullBundleIsClosed() throws Exception {
+	// an entry's header and padded content take 1024 bytes
+	Bundler bundler = new Bundler(directory, BundleFormat.TAR, 1500, 60000);
+	bundler.deleteLeftovers();
+	bundler.append("a", 0, source("a", "content of a"), null, completion("a"));
+	assertTrue(done.isEmpty());
+	bundler.append("b", 0, source("b", "content of b"), null, completion("b"));
+	assertEquals(2, done.size());
+	assertIndex(bundles(".tar")[0], "a", "b");
+    }
+
+    public void testUnreadableSourceFailsOnlyItsEntry() throws Exception {
+	for (BundleFormat format : BundleFormat.values()) {
+	    done.clear();
+	    Bundler bundler = new Bundler(new File(directory, format.name()), format, 1 << 20, 60000);
+	    bundler.deleteLeftovers();
+	    bundler.append("a", 0, source("a", "content of a"), null, completion("a"));
+	    try {
+		bundler.append("gone", 0, new File(base, "in/gone"), null, completion("gone"));
+		fail("a missing source was bundled");
+	    } catch (IOException e) {
+		// expected
+	    }
+	    bundler.append("b", 0, source("b", "content of b"), null, completion("b"));
+	    bundler.closeExpired(true);
+
+	    File[] bundles = new File(directory, format.name()).listFiles();
+	    Arrays.sort(bundles);
+	    File bundle = bundles[0];
+	    assertEquals(Arrays.asList("a in " + bundle.getName(), "b in " + bundle.getName()), done);
+	    assertIndex(bundle, "a", "b");
+	}
+    }
+
+    public void testLeftoversAreDeleted() throws Exception {
+	directory.mkdirs();
+	File part = new File(directory, ".bundle-1-000000.tar.part");
+	File index = new File(directory, ".bundle-1-000000.tar.idx.part");
+	part.createNewFile();
+	index.createNewFile();
+	new Bundler(directory, BundleFormat.TAR, 1 << 20, 60000).deleteLeftovers();
+	assertFalse(part.exists());
+	assertFalse(index.exists());
+    }
+}
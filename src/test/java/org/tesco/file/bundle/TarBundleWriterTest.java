@@ -0,0 +1,154 @@
+package org.tesco.file.bundle;
+
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.apache.camel.util.FileUtil;
+
+public class TarBundleWriterTest extends TestCase {
+
+    private File base;
+    private File bundle;
+    private TarBundleWriter writer;
+
+    @Override
+    protected void setUp() throws Exception {
+	base = new File("target/test/tar-bundle");
+	FileUtil.removeDir(base);
+	base.mkdirs();
+	bundle = new File(base, "bundle.tar");
+	writer = new TarBundleWriter(bundle);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+	writer.abort();
+	FileUtil.removeDir(base);
+    }
+
+    private long append(String name, byte[] content) throws Exception {
+	File file = new File(base, "source");
+	Files.write(file.toPath(), content);
+	try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+	    return writer.append(name, 1500000000000L, in);
+	}
+    }
+
+    private static String string(byte[] header, int offset, int size) {
+	int end = offset;
+	while (end < offset + size && header[end] != 0) {
+	    end++;
+	}
+	return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private static long octal(byte[] header, int offset, int size) {
+	return Long.parseLong(string(header, offset, size).trim(), 8);
+    }
+
+    /**
+     * Checks the ustar magic and the checksum, summed with its own field as
+     * spaces.
+     */
+    private static void assertHeader(byte[] header) {
+	assertEquals("ustar", string(header, 257, 6));
+	assertEquals("00", new String(header, 263, 2, StandardCharsets.US_ASCII));
+	long sum = 0;
+	for (int i = 0; i < 512; i++) {
+	    sum += i >= 148 && i < 156 ? ' ' : header[i] & 0xff;
+	}
+	assertEquals(sum, octal(header, 148, 8));
+    }
+
+    public void testFileAndContentEntries() throws Exception {
+	byte[] first = "first entry".getBytes(StandardCharsets.UTF_8);
+	byte[] second = new byte[1000];
+	Arrays.fill(second, (byte) 'x');
+	assertEquals(512, append("a/first.txt", first));
+	assertEquals(1536, writer.append("second.bin", 1500000000000L, second));
+	long size = writer.size();
+	writer.finish();
+
+	byte[] tar = Files.readAllBytes(bundle.toPath());
+	assertEquals(size + 1024, tar.length);
+	assertEquals(0, tar.length % 512);
+
+	byte[] header = Arrays.copyOfRange(tar, 0, 512);
+	assertHeader(header);
+	assertEquals("a/first.txt", string(header, 0, 100));
+	assertEquals(first.length, octal(header, 124, 12));
+	assertEquals(1500000000L, octal(header, 136, 12));
+	assertEquals('0', header[156]);
+	assertEquals(0644, octal(header, 100, 8));
+	assertTrue(Arrays.equals(first, Arrays.copyOfRange(tar, 512, 512 + first.length)));
+
+	header = Arrays.copyOfRange(tar, 1024, 1536);
+	assertHeader(header);
+	assertEquals("second.bin", string(header, 0, 100));
+	assertEquals(second.length, octal(header, 124, 12));
+	assertTrue(Arrays.equals(second, Arrays.copyOfRange(tar, 1536, 1536 + second.length)));
+
+	// two empty blocks end the archive
+	for (int i = tar.length - 1024; i < tar.length; i++) {
+	    assertEquals(0, tar[i]);
+	}
+    }
+
+    public void testLongNameIsSplitIntoPrefix() throws Exception {
+	String directory = repeat('d', 80) + "/" + repeat('e', 40);
+	String name = directory + "/" + repeat('n', 60);
+	append(name, new byte[] { 1 });
+	writer.finish();
+
+	byte[] header = Arrays.copyOfRange(Files.readAllBytes(bundle.toPath()), 0, 512);
+	assertHeader(header);
+	assertEquals(directory, string(header, 345, 155));
+	assertEquals(repeat('n', 60), string(header, 0, 100));
+    }
+
+    public void testUnsplittableNameGetsAPaxHeader() throws Exception {
+	String name = repeat('n', 150) + ".txt";
+	byte[] content = "pax".getBytes(StandardCharsets.UTF_8);
+	long offset = append(name, content);
+	writer.finish();
+
+	byte[] tar = Files.readAllBytes(bundle.toPath());
+	byte[] pax = Arrays.copyOfRange(tar, 0, 512);
+	assertHeader(pax);
+	assertEquals('x', pax[156]);
+	int length = (int) octal(pax, 124, 12);
+	String record = new String(tar, 512, length, StandardCharsets.UTF_8);
+	assertEquals(length + " path=" + name + "\n", record);
+
+	byte[] header = Arrays.copyOfRange(tar, 1024, 1536);
+	assertHeader(header);
+	assertEquals('0', header[156]);
+	assertEquals(1536, offset);
+	assertTrue(Arrays.equals(content, Arrays.copyOfRange(tar, 1536, 1536 + content.length)));
+    }
+
+    public void testPaxRecordLengthCountsItsOwnDigits() throws Exception {
+	// 997 bytes before its length, so 1000 with three digits, which takes four
+	String name = repeat('p', 990);
+	append(name, new byte[0]);
+	writer.finish();
+
+	byte[] tar = Files.readAllBytes(bundle.toPath());
+	int length = (int) octal(tar, 124, 12);
+	String record = new String(tar, 512, length, StandardCharsets.UTF_8);
+	assertEquals(1001, length);
+	assertEquals("1001 path=" + name + "\n", record);
+    }
+
+    private static String repeat(char c, int count) {
+	char[] chars = new char[count];
+	Arrays.fill(chars, c);
+	return new String(chars);
+    }
+}
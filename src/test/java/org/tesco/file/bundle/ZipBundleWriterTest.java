@@ -0,0 +1,105 @@
+package org.tesco.file.bundle;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import junit.framework.TestCase;
+
+import org.apache.camel.util.FileUtil;
+
+public class ZipBundleWriterTest extends TestCase {
+
+    private File base;
+    private File bundle;
+    private ZipBundleWriter writer;
+
+    @Override
+    protected void setUp() throws Exception {
+	base = new File("target/test/zip-bundle");
+	FileUtil.removeDir(base);
+	base.mkdirs();
+	bundle = new File(base, "bundle.zip");
+	writer = new ZipBundleWriter(bundle);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+	writer.abort();
+	FileUtil.removeDir(base);
+    }
+
+    private long append(String name, byte[] content) throws Exception {
+	File file = new File(base, "source");
+	Files.write(file.toPath(), content);
+	try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+	    return writer.append(name, 1500000000000L, in);
+	}
+    }
+
+    private byte[] readAt(long offset, int length) throws Exception {
+	byte[] b = new byte[length];
+	try (RandomAccessFile file = new RandomAccessFile(bundle, "r")) {
+	    file.seek(offset);
+	    file.readFully(b);
+	}
+	return b;
+    }
+
+    public void testEntriesAreStoredAndReadableInPlace() throws Exception {
+	byte[] first = "first entry".getBytes(StandardCharsets.UTF_8);
+	byte[] second = new byte[200000];
+	new Random(1).nextBytes(second);
+	byte[] third = "from memory".getBytes(StandardCharsets.UTF_8);
+	long firstOffset = append("a/first.txt", first);
+	long secondOffset = append("second.bin", second);
+	long thirdOffset = writer.append("third.txt", 1500000000000L, third);
+	writer.finish();
+
+	// the offsets point at the content itself
+	assertTrue(Arrays.equals(first, readAt(firstOffset, first.length)));
+	assertTrue(Arrays.equals(second, readAt(secondOffset, second.length)));
+	assertTrue(Arrays.equals(third, readAt(thirdOffset, third.length)));
+
+	try (ZipFile zip = new ZipFile(bundle)) {
+	    assertEquals(3, zip.size());
+	    assertEntry(zip, "a/first.txt", first);
+	    assertEntry(zip, "second.bin", second);
+	    assertEntry(zip, "third.txt", third);
+	}
+    }
+
+    private static void assertEntry(ZipFile zip, String name, byte[] content) throws Exception {
+	ZipEntry entry = zip.getEntry(name);
+	assertNotNull(name, entry);
+	assertEquals(ZipEntry.STORED, entry.getMethod());
+	assertEquals(content.length, entry.getSize());
+	assertEquals(content.length, entry.getCompressedSize());
+	byte[] read = new byte[content.length];
+	try (InputStream in = zip.getInputStream(entry)) {
+	    int n = 0;
+	    for (int count; n < read.length && (count = in.read(read, n, read.length - n)) != -1;) {
+		n += count;
+	    }
+	    assertEquals(-1, in.read());
+	}
+	assertTrue(name, Arrays.equals(content, read));
+    }
+
+    public void testEmptyEntry() throws Exception {
+	long offset = append("empty", new byte[0]);
+	assertEquals(offset, writer.size());
+	writer.finish();
+	try (ZipFile zip = new ZipFile(bundle)) {
+	    assertEntry(zip, "empty", new byte[0]);
+	}
+    }
+}
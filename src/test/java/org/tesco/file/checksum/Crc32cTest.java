@@ -0,0 +1,92 @@
+package org.tesco.file.checksum;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Checksum;
+
+import junit.framework.TestCase;
+
+public class Crc32cTest extends TestCase {
+
+    private static long crc(byte[] b) {
+	Crc32c crc = new Crc32c();
+	crc.update(b, 0, b.length);
+	return crc.getValue();
+    }
+
+    public void testCheckValue() {
+	assertEquals(0xe3069283L, crc("123456789".getBytes(StandardCharsets.US_ASCII)));
+	assertEquals(0L, crc(new byte[0]));
+    }
+
+    public void testRfc3720Vectors() {
+	byte[] b = new byte[32];
+	assertEquals(0x8a9136aaL, crc(b));
+	Arrays.fill(b, (byte) 0xff);
+	assertEquals(0x62a8ab43L, crc(b));
+	for (int i = 0; i < 32; i++) {
+	    b[i] = (byte) i;
+	}
+	assertEquals(0x46dd794eL, crc(b));
+	for (int i = 0; i < 32; i++) {
+	    b[i] = (byte) (31 - i);
+	}
+	assertEquals(0x113fdb5cL, crc(b));
+    }
+
+    public void testBytesSlicesAndOffsetsAgree() {
+	byte[] b = new byte[1000];
+	new Random(1).nextBytes(b);
+	for (int off = 0; off < 9; off++) {
+	    for (int len : new int[] { 0, 1, 7, 8, 9, 63, 500, b.length - off }) {
+		Crc32c bytes = new Crc32c();
+		for (int i = off; i < off + len; i++) {
+		    bytes.update(b[i]);
+		}
+		Crc32c slices = new Crc32c();
+		slices.update(b, off, len);
+		assertEquals("off " + off + " len " + len, bytes.getValue(), slices.getValue());
+	    }
+	}
+    }
+
+    public void testUpdatesInPartsAndReset() {
+	byte[] b = new byte[4096];
+	new Random(2).nextBytes(b);
+	long whole = crc(b);
+	Crc32c parts = new Crc32c();
+	parts.update(b, 0, 13);
+	parts.update(b, 13, 2000);
+	parts.update(b, 2013, b.length - 2013);
+	assertEquals(whole, parts.getValue());
+	parts.reset();
+	parts.update(b, 0, b.length);
+	assertEquals(whole, parts.getValue());
+    }
+
+    public void testMatchesThePlatform() throws Exception {
+	Class<?> platform;
+	try {
+	    platform = Class.forName("java.util.zip.CRC32C");
+	} catch (ClassNotFoundException e) {
+	    // Java 8 has none to compare with
+	    return;
+	}
+	Random random = new Random(3);
+	for (int size : new int[] { 1, 8, 100, 65536 + 3 }) {
+	    byte[] b = new byte[size];
+	    random.nextBytes(b);
+	    Checksum expected = (Checksum) platform.getConstructor().newInstance();
+	    expected.update(b, 0, b.length);
+	    assertEquals("size " + size, expected.getValue(), crc(b));
+	}
+    }
+
+    public void testCreate() {
+	byte[] b = "123456789".getBytes(StandardCharsets.US_ASCII);
+	Checksum crc = Crc32c.create();
+	crc.update(b, 0, b.length);
+	assertEquals(0xe3069283L, crc.getValue());
+    }
+}
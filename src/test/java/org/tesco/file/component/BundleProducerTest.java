@@ -0,0 +1,84 @@
+package org.tesco.file.component;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.camel.util.FileUtil;
+
+/**
+ * Writes through a <tt>bundle</tt> producer, without starting a route.
+ */
+public class BundleProducerTest extends TestCase {
+
+    private File base;
+    private DefaultCamelContext context;
+    private DirectoryComponent component;
+    private BundleProducer producer;
+
+    @Override
+    protected void setUp() throws Exception {
+	base = new File("target/test/bundle-producer").getAbsoluteFile();
+	FileUtil.removeDir(base);
+	new File(base, "in").mkdirs();
+	context = new DefaultCamelContext();
+	component = new DirectoryComponent();
+	component.setCamelContext(context);
+	component.start();
+	DirectoryEndpoint endpoint = (DirectoryEndpoint) component.createEndpoint("dir://" + base + "/out?bundle=tar&bundleTimeout=60000");
+	endpoint.start();
+	producer = (BundleProducer) endpoint.createProducer();
+	producer.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+	producer.stop();
+	component.stop();
+	FileUtil.removeDir(base);
+    }
+
+    private Exchange send(String name, final CountDownLatch done) throws Exception {
+	File source = new File(base, "in/" + name);
+	Files.write(source.toPath(), name.getBytes());
+	Exchange exchange = new DefaultExchange(context);
+	exchange.getIn().setBody(source);
+	exchange.getIn().setHeader(Exchange.FILE_NAME, name);
+	producer.process(exchange, new AsyncCallback() {
+	    @Override
+	    public void done(boolean doneSync) {
+		done.countDown();
+	    }
+	});
+	return exchange;
+    }
+
+    public void testStopClosesTheOpenBundle() throws Exception {
+	CountDownLatch done = new CountDownLatch(1);
+	Exchange exchange = send("a", done);
+	assertEquals(1, done.getCount());
+	producer.stop();
+	assertTrue(done.await(10, TimeUnit.SECONDS));
+	assertNull(exchange.getException());
+	assertTrue(new File(exchange.getIn().getHeader(Exchange.FILE_NAME_PRODUCED, String.class)).isFile());
+    }
+
+    public void testExchangeAfterStopIsStillBundled() throws Exception {
+	producer.stop();
+	CountDownLatch done = new CountDownLatch(1);
+	Exchange exchange = send("late", done);
+	// nothing is left to close its bundle later
+	assertTrue(done.await(10, TimeUnit.SECONDS));
+	assertNull(exchange.getException());
+	File bundle = new File(exchange.getIn().getHeader(Exchange.FILE_NAME_PRODUCED, String.class));
+	assertTrue(bundle.isFile());
+	assertTrue(new File(bundle.getPath() + ".idx").isFile());
+    }
+}
@@ -0,0 +1,112 @@
+package org.tesco.file.component;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import junit.framework.TestCase;
+
+import org.apache.camel.Endpoint;
+import org.apache.camel.Exchange;
+import org.apache.camel.Producer;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.camel.util.FileUtil;
+
+/**
+ * Writes through a <tt>dedupStore</tt> producer, without starting a route.
+ */
+public class DedupStoreTest extends TestCase {
+
+    private File base;
+    private DefaultCamelContext context;
+    private DirectoryComponent component;
+
+    @Override
+    protected void setUp() throws Exception {
+	base = new File("target/test/dedup").getAbsoluteFile();
+	FileUtil.removeDir(base);
+	new File(base, "in").mkdirs();
+	context = new DefaultCamelContext();
+	component = new DirectoryComponent();
+	component.setCamelContext(context);
+	component.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+	component.stop();
+	FileUtil.removeDir(base);
+    }
+
+    private Producer producer(String options) throws Exception {
+	Endpoint endpoint = component.createEndpoint("dir://" + base + "/out?dedupStore=" + base + "/blobs" + options);
+	endpoint.start();
+	Producer producer = endpoint.createProducer();
+	producer.start();
+	return producer;
+    }
+
+    private void write(Producer producer, String name, String content) throws Exception {
+	File source = new File(base, "in/" + name);
+	Files.write(source.toPath(), content.getBytes(StandardCharsets.UTF_8));
+	Exchange exchange = new DefaultExchange(context);
+	exchange.getIn().setBody(source);
+	exchange.getIn().setHeader(Exchange.FILE_NAME, name);
+	producer.process(exchange);
+	if (exchange.getException() != null) {
+	    throw exchange.getException();
+	}
+    }
+
+    private String read(String name) throws Exception {
+	return new String(Files.readAllBytes(new File(base, "out/" + name).toPath()), StandardCharsets.UTF_8);
+    }
+
+    private File blob() {
+	File[] directories = new File(base, "blobs").listFiles();
+	for (File directory : directories) {
+	    if (directory.isDirectory()) {
+		return directory.listFiles()[0];
+	    }
+	}
+	throw new AssertionError("no blob stored");
+    }
+
+    public void testNeedsAtomicWrite() throws Exception {
+	try {
+	    producer("");
+	    fail("dedupStore was accepted without atomicWrite");
+	} catch (IllegalArgumentException e) {
+	    assertEquals("The dedupStore option needs atomicWrite=true", e.getMessage());
+	}
+    }
+
+    public void testWritingANameAgainLeavesTheBlobAndItsDuplicates() throws Exception {
+	Producer producer = producer("&atomicWrite=true");
+	write(producer, "a", "first content");
+	write(producer, "b", "first content");
+	File blob = blob();
+	assertEquals(3, Files.getAttribute(blob.toPath(), "unix:nlink"));
+
+	write(producer, "a", "second");
+	assertEquals("second", read("a"));
+	assertEquals("first content", read("b"));
+	assertEquals("first content", new String(Files.readAllBytes(blob.toPath()), StandardCharsets.UTF_8));
+	assertEquals(2, Files.getAttribute(blob.toPath(), "unix:nlink"));
+	producer.stop();
+    }
+
+    public void testDuplicateDoesNotChangeTheBlobsPermissions() throws Exception {
+	Producer first = producer("&atomicWrite=true&chmod=644");
+	write(first, "a", "content");
+	first.stop();
+	Producer second = producer("&atomicWrite=true&chmod=600");
+	write(second, "b", "content");
+	second.stop();
+
+	assertEquals("rw-r--r--", PosixFilePermissions.toString(Files.getPosixFilePermissions(blob().toPath())));
+	assertEquals("content", read("b"));
+    }
+}
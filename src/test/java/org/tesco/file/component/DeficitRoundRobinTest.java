@@ -0,0 +1,141 @@
+package org.tesco.file.component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class DeficitRoundRobinTest extends TestCase {
+
+    private static final long BLOCK = DeficitRoundRobin.MIN_COST;
+
+    private final Map<String, Long> served = new HashMap<String, Long>();
+    private final List<String> order = new ArrayList<String>();
+
+    private static final class QueueLane implements DeficitRoundRobin.Lane {
+	private final String name;
+	private final Deque<Long> lengths = new ArrayDeque<Long>();
+
+	QueueLane(String name, int files, long length) {
+	    this.name = name;
+	    for (int i = 0; i < files; i++) {
+		lengths.add(length);
+	    }
+	}
+
+	@Override
+	public String getName() {
+	    return name;
+	}
+
+	@Override
+	public long peek() {
+	    return lengths.isEmpty() ? -1 : lengths.peek();
+	}
+    }
+
+    /**
+     * Takes up to <tt>files</tt> files the way a poll does.
+     */
+    private void serve(DeficitRoundRobin drr, int files) throws Exception {
+	for (int i = 0; i < files; i++) {
+	    QueueLane lane = (QueueLane) drr.next();
+	    if (lane == null) {
+		return;
+	    }
+	    long length = lane.lengths.poll();
+	    Long total = served.get(lane.name);
+	    served.put(lane.name, (total != null ? total : 0) + length);
+	    order.add(lane.name);
+	}
+    }
+
+    private long served(String name) {
+	Long total = served.get(name);
+	return total != null ? total : 0;
+    }
+
+    public void testBytesAreSharedByWeight() throws Exception {
+	DeficitRoundRobin drr = new DeficitRoundRobin(4 * BLOCK, "heavy:3");
+	// many small files against few large ones
+	QueueLane heavy = new QueueLane("heavy", 10000, BLOCK);
+	QueueLane light = new QueueLane("light", 1000, 4 * BLOCK);
+	QueueLane other = new QueueLane("other", 10000, 2 * BLOCK);
+	drr.start(Arrays.asList(heavy, light, other));
+	serve(drr, 3000);
+
+	assertEquals(3 * served("light"), served("heavy"), 4 * BLOCK);
+	assertEquals(served("light"), served("other"), 4 * BLOCK);
+    }
+
+    public void testCreditCarriesOverTheRound() throws Exception {
+	// neither file fits a single quantum
+	DeficitRoundRobin drr = new DeficitRoundRobin(2 * BLOCK, null);
+	drr.start(Arrays.asList(new QueueLane("a", 2, 3 * BLOCK), new QueueLane("b", 2, 3 * BLOCK)));
+	serve(drr, 4);
+	assertEquals(Arrays.asList("a", "b", "a", "b"), order);
+    }
+
+    public void testEmptyLanesAreRemoved() throws Exception {
+	DeficitRoundRobin drr = new DeficitRoundRobin(BLOCK, null);
+	// empty at the start, in the middle and at the end of the round
+	drr.start(Arrays.asList(new QueueLane("empty", 0, BLOCK), new QueueLane("a", 3, BLOCK),
+		new QueueLane("short", 1, BLOCK), new QueueLane("b", 3, BLOCK), new QueueLane("last", 0, BLOCK)));
+	serve(drr, 100);
+	assertEquals(Arrays.asList("a", "short", "b", "a", "b", "a", "b"), order);
+	assertNull(drr.next());
+    }
+
+    public void testNextPollCarriesOnWithTheCurrentLane() throws Exception {
+	DeficitRoundRobin drr = new DeficitRoundRobin(2 * BLOCK, null);
+	QueueLane a = new QueueLane("a", 10, BLOCK);
+	QueueLane b = new QueueLane("b", 10, BLOCK);
+	drr.start(Arrays.asList(a, b));
+	serve(drr, 3);
+	assertEquals(Arrays.asList("a", "a", "b"), order);
+
+	// b still has the credit of its visit, and a newly listed lane waits its turn
+	drr.start(Arrays.asList(a, new QueueLane("c", 10, BLOCK), b));
+	serve(drr, 5);
+	assertEquals(Arrays.asList("a", "a", "b", "b", "a", "a", "c", "c"), order);
+    }
+
+    public void testDisappearedLaneLosesItsCredit() throws Exception {
+	DeficitRoundRobin drr = new DeficitRoundRobin(BLOCK, null);
+	QueueLane a = new QueueLane("a", 1, 3 * BLOCK);
+	QueueLane b = new QueueLane("b", 10, BLOCK);
+	drr.start(Arrays.asList(a, b));
+	// a builds up two blocks of credit waiting for its file
+	serve(drr, 2);
+	assertEquals(Arrays.asList("b", "b"), order);
+
+	// a poll that does not list it
+	drr.start(Arrays.asList(b));
+	drr.start(Arrays.asList(a, b));
+	serve(drr, 2);
+	// back from nothing, it has to build it up again
+	assertEquals(Arrays.asList("b", "b", "b", "b"), order);
+    }
+
+    public void testInvalidWeightsAreRejected() {
+	for (String weights : new String[] { "a", ":2", "a:x", "a:0", "a:-1" }) {
+	    try {
+		new DeficitRoundRobin(BLOCK, weights);
+		fail("accepted " + weights);
+	    } catch (IllegalArgumentException e) {
+		// expected
+	    }
+	}
+	try {
+	    new DeficitRoundRobin(0, null);
+	    fail("accepted a quantum of 0");
+	} catch (IllegalArgumentException e) {
+	    // expected
+	}
+    }
+}
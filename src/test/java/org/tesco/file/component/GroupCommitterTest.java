@@ -0,0 +1,98 @@
+package org.tesco.file.component;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.camel.util.FileUtil;
+
+public class GroupCommitterTest extends TestCase {
+
+    private File base;
+    private DefaultCamelContext context;
+    private ExecutorService executor;
+
+    @Override
+    protected void setUp() throws Exception {
+	base = new File("target/test/group-commit");
+	FileUtil.removeDir(base);
+	base.mkdirs();
+	context = new DefaultCamelContext();
+	executor = Executors.newSingleThreadExecutor();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+	executor.shutdownNow();
+	FileUtil.removeDir(base);
+    }
+
+    private File file(String name) throws Exception {
+	File file = new File(base, name);
+	Files.write(file.toPath(), name.getBytes());
+	return file;
+    }
+
+    private static AsyncCallback countDown(final CountDownLatch latch) {
+	return new AsyncCallback() {
+	    @Override
+	    public void done(boolean doneSync) {
+		latch.countDown();
+	    }
+	};
+    }
+
+    private void stop(GroupCommitter committer) throws Exception {
+	committer.stop();
+	executor.shutdown();
+	assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+	committer.drain();
+    }
+
+    public void testFilesCommittedMeanwhileShareASync() throws Exception {
+	GroupCommitter committer = new GroupCommitter(10, 500);
+	CountDownLatch done = new CountDownLatch(5);
+	for (int i = 0; i < 5; i++) {
+	    committer.commit(file("f" + i), new DefaultExchange(context), countDown(done));
+	}
+	executor.submit(committer);
+	assertTrue(done.await(10, TimeUnit.SECONDS));
+	assertEquals(5, committer.getFiles());
+	assertEquals(1, committer.getBatches());
+	stop(committer);
+    }
+
+    public void testCommitAfterStopIsSyncedByTheCaller() throws Exception {
+	GroupCommitter committer = new GroupCommitter(10, 5);
+	executor.submit(committer);
+	stop(committer);
+
+	CountDownLatch done = new CountDownLatch(1);
+	Exchange exchange = new DefaultExchange(context);
+	committer.commit(file("late"), exchange, countDown(done));
+	// completed before commit returned, nothing is left to sync it later
+	assertEquals(0, done.getCount());
+	assertNull(exchange.getException());
+	assertEquals(1, committer.getFiles());
+    }
+
+    public void testVanishedFileStillCompletes() throws Exception {
+	GroupCommitter committer = new GroupCommitter(10, 5);
+	executor.submit(committer);
+	CountDownLatch done = new CountDownLatch(1);
+	Exchange exchange = new DefaultExchange(context);
+	committer.commit(new File(base, "gone"), exchange, countDown(done));
+	assertTrue(done.await(10, TimeUnit.SECONDS));
+	assertNull(exchange.getException());
+	stop(committer);
+    }
+}
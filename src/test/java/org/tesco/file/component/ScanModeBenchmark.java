@@ -0,0 +1,101 @@
+package org.tesco.file.component;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+
+/**
+ * Time to the first file and heap in use at that moment, for the poll and
+ * stream modes over directories of growing size, printed as one table. Run
+ * with <tt>mvn test -Pbenchmark -Dtest=ScanModeBenchmark</tt>;
+ * <tt>-Dbench.entries</tt> sets the numbers of files, separated by commas,
+ * 1000,10000,100000 by default. The directories are kept under
+ * <tt>target/bench</tt> for the next run.
+ */
+public class ScanModeBenchmark extends TestCase {
+
+    private static final String ENTRIES = System.getProperty("bench.entries", "1000,10000,100000");
+    private static final long TIMEOUT = Long.getLong("bench.timeout", 600);
+    private static final ConsumerMode[] MODES = { ConsumerMode.POLL, ConsumerMode.STREAM };
+
+    public void testScanModes() throws Exception {
+	StringBuilder table = new StringBuilder(String.format("%10s", "entries"));
+	for (ConsumerMode mode : MODES) {
+	    table.append(String.format("%18s%10s", mode.name().toLowerCase() + " first ms", "heap MB"));
+	}
+	table.append(String.format("%n"));
+	// the first context start loads the classes, which is no part of any row
+	for (ConsumerMode mode : MODES) {
+	    run(directory(10), mode);
+	}
+	for (String entries : ENTRIES.split(",")) {
+	    File input = directory(Integer.parseInt(entries.trim()));
+	    table.append(String.format("%10s", entries.trim()));
+	    for (ConsumerMode mode : MODES) {
+		table.append(run(input, mode));
+	    }
+	    table.append(String.format("%n"));
+	}
+	System.out.print(table);
+    }
+
+    private static File directory(int entries) throws IOException {
+	File input = new File("target/bench/scan-" + entries);
+	input.mkdirs();
+	for (int i = 0; i < entries; i++) {
+	    File file = new File(input, "f" + i);
+	    if (!file.exists()) {
+		file.createNewFile();
+	    }
+	}
+	return input;
+    }
+
+    /**
+     * @return the row's cells for the mode
+     */
+    private String run(final File input, final ConsumerMode mode) throws Exception {
+	final AtomicLong heap = new AtomicLong();
+	final CountDownLatch first = new CountDownLatch(1);
+	DefaultCamelContext context = new DefaultCamelContext();
+	context.addComponent("dir", new DirectoryComponent());
+	context.getShutdownStrategy().setTimeout(10);
+	context.addRoutes(new RouteBuilder() {
+	    @Override
+	    public void configure() {
+		from("dir://" + input + "?noop=true&idempotent=false&initialDelay=0&mode=" + mode.name().toLowerCase()).process(new Processor() {
+		    @Override
+		    public void process(Exchange exchange) throws Exception {
+			if (first.getCount() > 0) {
+			    System.gc();
+			    Runtime runtime = Runtime.getRuntime();
+			    heap.set(runtime.totalMemory() - runtime.freeMemory());
+			    first.countDown();
+			}
+		    }
+		});
+	    }
+	});
+	long start = System.nanoTime();
+	context.start();
+	try {
+	    boolean done = first.await(TIMEOUT, TimeUnit.SECONDS);
+	    long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+	    if (!done) {
+		return String.format("%18s%10s", "> " + TIMEOUT + " s", "-");
+	    }
+	    return String.format("%18d%10d", millis, heap.get() >> 20);
+	} finally {
+	    context.stop();
+	}
+    }
+}
@@ -0,0 +1,98 @@
+package org.tesco.file.component;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.camel.component.file.GenericFile;
+
+public class TopFileSelectionTest extends TestCase {
+
+    private final PriorityComparator oldest = new PriorityComparator(PriorityPolicy.OLDEST, null);
+
+    private static GenericFile<File> file(String name, long lastModified) {
+	GenericFile<File> file = new GenericFile<File>();
+	file.setRelativeFilePath(name);
+	file.setFileName(name);
+	file.setLastModified(lastModified);
+	return file;
+    }
+
+    private static List<GenericFile<File>> files(int count) {
+	List<GenericFile<File>> files = new ArrayList<GenericFile<File>>();
+	for (int i = 0; i < count; i++) {
+	    // a few share a modification time, so the name breaks the tie
+	    files.add(file(String.format("f%04d", i), 1000 + i / 3));
+	}
+	Collections.shuffle(files, new Random(1));
+	return files;
+    }
+
+    public void testKeepsTheMostUrgentFilesInOrder() {
+	List<GenericFile<File>> files = files(1000);
+	TopFileSelection selection = new TopFileSelection(oldest, 10);
+	List<GenericFile<File>> evicted = new ArrayList<GenericFile<File>>();
+	for (GenericFile<File> file : files) {
+	    GenericFile<File> out = selection.offer(file);
+	    if (out != null) {
+		evicted.add(out);
+	    }
+	}
+	// every file beyond the bound pushed exactly one out
+	assertEquals(990, evicted.size());
+
+	List<GenericFile<File>> selected = selection.drain();
+	Collections.sort(files, oldest);
+	assertEquals(files.subList(0, 10), selected);
+	for (GenericFile<File> out : evicted) {
+	    assertTrue(oldest.compare(selected.get(9), out) < 0);
+	}
+	assertTrue(selection.drain().isEmpty());
+    }
+
+    public void testOfferedFileCanFallOutItself() {
+	TopFileSelection selection = new TopFileSelection(oldest, 2);
+	GenericFile<File> a = file("a", 1);
+	GenericFile<File> b = file("b", 2);
+	GenericFile<File> c = file("c", 3);
+	assertNull(selection.offer(c));
+	assertNull(selection.offer(b));
+	assertSame(c, selection.offer(a));
+	// no more urgent than the least urgent one kept
+	assertSame(c, selection.offer(c));
+	List<GenericFile<File>> expected = new ArrayList<GenericFile<File>>();
+	expected.add(a);
+	expected.add(b);
+	assertEquals(expected, selection.drain());
+    }
+
+    public void testFewerFilesThanTheLimit() {
+	TopFileSelection selection = new TopFileSelection(oldest, 10);
+	List<GenericFile<File>> files = files(4);
+	for (GenericFile<File> file : files) {
+	    assertNull(selection.offer(file));
+	}
+	Collections.sort(files, oldest);
+	assertEquals(files, selection.drain());
+    }
+
+    public void testLimitCanShrinkBetweenSelections() {
+	TopFileSelection selection = new TopFileSelection(oldest, 10);
+	List<GenericFile<File>> files = files(50);
+	for (GenericFile<File> file : files) {
+	    selection.offer(file);
+	}
+	selection.drain();
+
+	selection.setLimit(3);
+	for (GenericFile<File> file : files) {
+	    selection.offer(file);
+	}
+	Collections.sort(files, oldest);
+	assertEquals(files.subList(0, 3), selection.drain());
+    }
+}
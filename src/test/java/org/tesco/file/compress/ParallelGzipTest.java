@@ -0,0 +1,162 @@
+package org.tesco.file.compress;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import junit.framework.TestCase;
+
+public class ParallelGzipTest extends TestCase {
+
+    private static final int BLOCK = 4096;
+
+    private ExecutorService workers;
+    private ParallelGzip gzip;
+
+    @Override
+    protected void setUp() throws Exception {
+	workers = Executors.newFixedThreadPool(2);
+	gzip = new ParallelGzip(workers, 2, 6, BLOCK);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+	workers.shutdownNow();
+    }
+
+    private static byte[] input(int size) {
+	// half random, half repeated, so blocks compress to different sizes
+	byte[] b = new byte[size];
+	Random random = new Random(size);
+	for (int i = 0; i < size; i++) {
+	    b[i] = (byte) ((i / 512) % 2 == 0 ? random.nextInt() : i % 7);
+	}
+	return b;
+    }
+
+    private byte[] compress(byte[] input) throws IOException {
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	assertEquals(input.length, gzip.compress(new ByteArrayInputStream(input), out));
+	return out.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] gz) throws IOException {
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gz))) {
+	    byte[] buffer = new byte[8192];
+	    for (int n; (n = in.read(buffer)) != -1;) {
+		out.write(buffer, 0, n);
+	    }
+	}
+	return out.toByteArray();
+    }
+
+    /**
+     * Inflates member by member, checking each header and trailer.
+     *
+     * @return the number of members
+     */
+    private static int members(byte[] gz, byte[] expected) throws Exception {
+	int members = 0;
+	int offset = 0;
+	int position = 0;
+	while (offset < gz.length) {
+	    assertEquals(0x1f, gz[offset] & 0xff);
+	    assertEquals(0x8b, gz[offset + 1] & 0xff);
+	    assertEquals(8, gz[offset + 2]);
+	    Inflater inflater = new Inflater(true);
+	    inflater.setInput(gz, offset + 10, gz.length - offset - 10);
+	    byte[] block = new byte[BLOCK];
+	    int length = 0;
+	    while (!inflater.finished()) {
+		length += inflater.inflate(block, length, block.length - length);
+		assertTrue("member " + members + " is longer than a block", length < block.length || inflater.finished());
+	    }
+	    int trailer = gz.length - inflater.getRemaining();
+	    inflater.end();
+	    CRC32 crc = new CRC32();
+	    crc.update(block, 0, length);
+	    assertEquals((int) crc.getValue(), readInt(gz, trailer));
+	    assertEquals(length, readInt(gz, trailer + 4));
+	    for (int i = 0; i < length; i++) {
+		assertEquals(expected[position + i], block[i]);
+	    }
+	    position += length;
+	    offset = trailer + 8;
+	    members++;
+	}
+	assertEquals(expected.length, position);
+	return members;
+    }
+
+    private static int readInt(byte[] b, int off) {
+	return (b[off] & 0xff) | (b[off + 1] & 0xff) << 8 | (b[off + 2] & 0xff) << 16 | (b[off + 3] & 0xff) << 24;
+    }
+
+    public void testEmptyInputIsOneEmptyMember() throws Exception {
+	byte[] gz = compress(new byte[0]);
+	assertEquals(0, gunzip(gz).length);
+	assertEquals(1, members(gz, new byte[0]));
+    }
+
+    public void testLessThanABlock() throws Exception {
+	byte[] input = input(100);
+	byte[] gz = compress(input);
+	assertTrue(Arrays.equals(input, gunzip(gz)));
+	assertEquals(1, members(gz, input));
+    }
+
+    public void testOneMemberPerBlock() throws Exception {
+	byte[] input = input(3 * BLOCK);
+	byte[] gz = compress(input);
+	assertTrue(Arrays.equals(input, gunzip(gz)));
+	assertEquals(3, members(gz, input));
+    }
+
+    public void testMoreBlocksThanArePending() throws Exception {
+	// 2 threads hold at most 4 blocks, so blocks are written and reused on the way
+	byte[] input = input(25 * BLOCK + 123);
+	byte[] gz = compress(input);
+	assertTrue(Arrays.equals(input, gunzip(gz)));
+	assertEquals(26, members(gz, input));
+    }
+
+    public void testIncompressibleBlocks() throws Exception {
+	byte[] input = new byte[5 * BLOCK];
+	new Random(1).nextBytes(input);
+	byte[] gz = compress(input);
+	assertTrue(Arrays.equals(input, gunzip(gz)));
+	assertEquals(5, members(gz, input));
+    }
+
+    public void testInputFailureIsThrown() throws Exception {
+	InputStream failing = new FilterInputStream(new ByteArrayInputStream(input(10 * BLOCK))) {
+	    private int read;
+
+	    @Override
+	    public int read(byte[] b, int off, int len) throws IOException {
+		if (read >= 6 * BLOCK) {
+		    throw new IOException("disk gone");
+		}
+		int count = super.read(b, off, len);
+		read += Math.max(0, count);
+		return count;
+	    }
+	};
+	try {
+	    gzip.compress(failing, new ByteArrayOutputStream());
+	    fail("the input's failure was swallowed");
+	} catch (IOException e) {
+	    assertEquals("disk gone", e.getMessage());
+	}
+    }
+}
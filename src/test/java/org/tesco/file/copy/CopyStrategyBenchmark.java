@@ -0,0 +1,107 @@
+package org.tesco.file.copy;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * Copies one file with <tt>Files.copy</tt>, the path the file producer takes
+ * for a file body, then through a 128 KB stream buffer and channel to
+ * channel, as <tt>copyStrategy=stream</tt> and <tt>channel</tt> do. Run with
+ * <tt>mvn test -Pbenchmark -Dtest=CopyStrategyBenchmark</tt>;
+ * <tt>-Dbench.size</tt> sets the file size in MB, 1024 by default, and
+ * <tt>-Dbench.runs</tt> the runs of each, 4 by default. The source is read
+ * once first, so every copy finds it in the page cache, and every copy
+ * goes to a new file.
+ */
+public class CopyStrategyBenchmark extends TestCase {
+
+    private static final long SIZE = Long.getLong("bench.size", 1024) << 20;
+    private static final int RUNS = Integer.getInteger("bench.runs", 4);
+
+    private File base;
+    private File source;
+    private BufferPool pool;
+
+    @Override
+    protected void setUp() throws Exception {
+	base = new File("target/bench/copy");
+	base.mkdirs();
+	source = new File(base, "source-" + (SIZE >> 20));
+	if (source.length() != SIZE) {
+	    write(source, SIZE);
+	}
+	pool = new BufferPool(64 << 20);
+	pool.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+	pool.stop();
+	new File(base, "target").delete();
+    }
+
+    public void testCopyStrategies() throws Exception {
+	final File target = new File(base, "target");
+	time("warm up", new Copy() {
+	    @Override
+	    public void run() throws IOException {
+		Files.copy(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	    }
+	}, 1);
+	time("Files.copy", new Copy() {
+	    @Override
+	    public void run() throws IOException {
+		Files.copy(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	    }
+	}, RUNS);
+	time("stream", new Copy() {
+	    @Override
+	    public void run() throws IOException {
+		new StreamCopier(pool, 128 * 1024, false).copy(source, target);
+	    }
+	}, RUNS);
+	time("channel", new Copy() {
+	    @Override
+	    public void run() throws IOException {
+		new ChannelCopier(pool, 128 * 1024, false).copy(source, target);
+	    }
+	}, RUNS);
+	assertEquals(SIZE, target.length());
+    }
+
+    private interface Copy {
+
+	void run() throws IOException;
+    }
+
+    private void time(String name, Copy copy, int runs) throws IOException {
+	StringBuilder millis = new StringBuilder();
+	for (int i = 0; i < runs; i++) {
+	    // freeing the last copy's blocks is not part of the copy
+	    Files.deleteIfExists(new File(base, "target").toPath());
+	    long start = System.nanoTime();
+	    copy.run();
+	    millis.append(' ').append(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+	}
+	System.out.printf("%s, %d MB:%s ms%n", name, SIZE >> 20, millis);
+    }
+
+    static void write(File file, long size) throws IOException {
+	Random random = new Random(1);
+	byte[] chunk = new byte[1 << 20];
+	try (OutputStream out = new FileOutputStream(file)) {
+	    for (long written = 0; written < size; written += chunk.length) {
+		random.nextBytes(chunk);
+		out.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+	    }
+	}
+    }
+}
@@ -0,0 +1,122 @@
+package org.tesco.file.copy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.camel.util.FileUtil;
+
+public class DeltaCopierTest extends TestCase {
+
+    private static final int BLOCK = 16;
+
+    private File base;
+    private File source;
+    private File target;
+    private BufferPool pool;
+    private int fullCopies;
+    private DeltaCopier copier;
+
+    @Override
+    protected void setUp() throws Exception {
+	base = new File("target/test/delta");
+	FileUtil.removeDir(base);
+	base.mkdirs();
+	source = new File(base, "source");
+	target = new File(base, "target");
+	pool = new BufferPool(1 << 20);
+	pool.start();
+	final StreamCopier stream = new StreamCopier(pool, 4096, false);
+	copier = new DeltaCopier(new FileCopier() {
+	    @Override
+	    public long copy(File source, File target) throws IOException {
+		fullCopies++;
+		return stream.copy(source, target);
+	    }
+	}, pool, BLOCK);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+	pool.stop();
+	FileUtil.removeDir(base);
+    }
+
+    private static byte[] bytes(int length, int seed) {
+	byte[] b = new byte[length];
+	new Random(seed).nextBytes(b);
+	return b;
+    }
+
+    private void assertCopy(byte[] from, byte[] to) throws Exception {
+	Files.write(source.toPath(), from);
+	Files.write(target.toPath(), to);
+	assertEquals(from.length, copier.copy(source, target));
+	assertTrue(Arrays.equals(from, Files.readAllBytes(target.toPath())));
+	assertEquals(0, fullCopies);
+    }
+
+    public void testMissingOrEmptyTargetIsCopiedInFull() throws Exception {
+	byte[] content = bytes(100, 1);
+	Files.write(source.toPath(), content);
+	assertEquals(100, copier.copy(source, target));
+	assertEquals(1, fullCopies);
+	Files.write(target.toPath(), new byte[0]);
+	assertEquals(100, copier.copy(source, target));
+	assertEquals(2, fullCopies);
+	assertTrue(Arrays.equals(content, Files.readAllBytes(target.toPath())));
+    }
+
+    public void testShorterTargetIsExtended() throws Exception {
+	byte[] content = bytes(5 * BLOCK + 7, 1);
+	// ends mid block, so the block it ends in is only partly there
+	assertCopy(content, Arrays.copyOf(content, 2 * BLOCK + 3));
+	// ends on a block boundary
+	assertCopy(content, Arrays.copyOf(content, 3 * BLOCK));
+    }
+
+    public void testLongerTargetIsTruncated() throws Exception {
+	byte[] content = bytes(3 * BLOCK + 5, 1);
+	byte[] longer = Arrays.copyOf(content, 6 * BLOCK + 1);
+	longer[5 * BLOCK] = 42;
+	assertCopy(content, longer);
+	// the source ends on a block boundary
+	content = Arrays.copyOf(content, 3 * BLOCK);
+	assertCopy(content, longer);
+	// nothing left of it
+	assertCopy(new byte[0], longer);
+    }
+
+    public void testPartlyChangedBlocks() throws Exception {
+	byte[] content = bytes(4 * BLOCK + 9, 1);
+	for (int changed : new int[] { 0, BLOCK - 1, BLOCK, 2 * BLOCK + 7, 4 * BLOCK, content.length - 1 }) {
+	    byte[] old = content.clone();
+	    old[changed] ^= 1;
+	    assertCopy(content, old);
+	}
+    }
+
+    public void testIdenticalFilesAreNotWritten() throws Exception {
+	byte[] content = bytes(10 * BLOCK + 3, 1);
+	Files.write(source.toPath(), content);
+	Files.write(target.toPath(), content);
+	long modified = System.currentTimeMillis() / 1000 * 1000 - 3600000;
+	assertTrue(target.setLastModified(modified));
+
+	assertEquals(content.length, copier.copy(source, target));
+	// any write or truncate would have moved it
+	assertEquals(modified, target.lastModified());
+	assertTrue(Arrays.equals(content, Files.readAllBytes(target.toPath())));
+
+	byte[] changed = content.clone();
+	changed[3 * BLOCK] ^= 1;
+	Files.write(source.toPath(), changed);
+	copier.copy(source, target);
+	assertTrue(modified != target.lastModified());
+	assertTrue(Arrays.equals(changed, Files.readAllBytes(target.toPath())));
+    }
+}
@@ -0,0 +1,116 @@
+package org.tesco.file.copy;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * Concurrent copies, each synced to disk, with and without
+ * <tt>preallocate</tt>, the way parallel routes write at once. Prints the
+ * throughput and, where <tt>filefrag</tt> is installed, the extents of the
+ * copies. Run with <tt>mvn test -Pbenchmark -Dtest=PreallocateBenchmark</tt>;
+ * <tt>-Dbench.size</tt> sets the size of each file in MB, 512 by default,
+ * and <tt>-Dbench.copies</tt> how many run at once, 4 by default.
+ */
+public class PreallocateBenchmark extends TestCase {
+
+    private static final long SIZE = Long.getLong("bench.size", 512) << 20;
+    private static final int COPIES = Integer.getInteger("bench.copies", 4);
+
+    private File base;
+    private File[] sources;
+    private BufferPool pool;
+    private ExecutorService executor;
+
+    @Override
+    protected void setUp() throws Exception {
+	base = new File("target/bench/preallocate");
+	base.mkdirs();
+	sources = new File[COPIES];
+	for (int i = 0; i < COPIES; i++) {
+	    sources[i] = new File(base, "source-" + (SIZE >> 20) + "-" + i);
+	    if (sources[i].length() != SIZE) {
+		CopyStrategyBenchmark.write(sources[i], SIZE);
+	    }
+	}
+	pool = new BufferPool(64 << 20);
+	pool.start();
+	executor = Executors.newFixedThreadPool(COPIES);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+	executor.shutdown();
+	pool.stop();
+	for (int i = 0; i < COPIES; i++) {
+	    new File(base, "target-" + i).delete();
+	}
+    }
+
+    public void testPreallocate() throws Exception {
+	for (boolean preallocate : new boolean[] { false, true, false, true }) {
+	    run(preallocate);
+	}
+    }
+
+    private void run(final boolean preallocate) throws Exception {
+	List<Future<Void>> copies = new ArrayList<Future<Void>>();
+	long start = System.nanoTime();
+	for (int i = 0; i < COPIES; i++) {
+	    final File source = sources[i];
+	    final File target = new File(base, "target-" + i);
+	    Files.deleteIfExists(target.toPath());
+	    copies.add(executor.submit(new Callable<Void>() {
+		@Override
+		public Void call() throws Exception {
+		    new StreamCopier(pool, 128 * 1024, preallocate).copy(source, target);
+		    try (FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.WRITE)) {
+			channel.force(true);
+		    }
+		    return null;
+		}
+	    }));
+	}
+	for (Future<Void> copy : copies) {
+	    copy.get();
+	}
+	long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+	System.out.printf("preallocate=%s: %d x %d MB in %d ms, %d MB/s, extents%s%n", preallocate, COPIES, SIZE >> 20, millis,
+		(COPIES * SIZE >> 20) * 1000 / millis, extents());
+    }
+
+    private String extents() {
+	StringBuilder extents = new StringBuilder();
+	for (int i = 0; i < COPIES; i++) {
+	    try {
+		Process process = new ProcessBuilder("filefrag", new File(base, "target-" + i).getPath()).redirectErrorStream(true).start();
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+		    // "<file>: <n> extents found"
+		    String line = in.readLine();
+		    String[] words = line != null ? line.split(" ") : new String[0];
+		    extents.append(' ').append(words.length >= 3 ? words[words.length - 3] : "?");
+		}
+		process.waitFor();
+	    } catch (IOException e) {
+		return " unknown, no filefrag";
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		return " unknown";
+	    }
+	}
+	return extents.toString();
+    }
+}
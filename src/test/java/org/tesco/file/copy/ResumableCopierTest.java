@@ -0,0 +1,188 @@
+package org.tesco.file.copy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import junit.framework.TestCase;
+
+import org.apache.camel.util.FileUtil;
+import org.tesco.file.copy.CheckpointJournal.Checkpoint;
+
+public class ResumableCopierTest extends TestCase {
+
+    private static final int INTERVAL = ResumableCopier.TAIL;
+
+    private File base;
+    private File source;
+    private File target;
+    private File journalFile;
+    private BufferPool pool;
+    private CheckpointJournal journal;
+    private byte[] content;
+
+    @Override
+    protected void setUp() throws Exception {
+	base = new File("target/test/resumable").getAbsoluteFile();
+	FileUtil.removeDir(base);
+	base.mkdirs();
+	source = new File(base, "source");
+	target = new File(base, "target");
+	journalFile = new File(base, "journal");
+	pool = new BufferPool(1 << 20);
+	pool.start();
+	journal = new CheckpointJournal(journalFile);
+	journal.load();
+	content = new byte[3 * INTERVAL + 100];
+	new Random(1).nextBytes(content);
+	Files.write(source.toPath(), content);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+	pool.stop();
+	FileUtil.removeDir(base);
+    }
+
+    private String key() {
+	return source.getAbsolutePath() + ":" + source.length() + ":" + source.lastModified();
+    }
+
+    private static long tailChecksum(byte[] data, int offset) {
+	CRC32 crc = new CRC32();
+	int from = Math.max(0, offset - ResumableCopier.TAIL);
+	crc.update(data, from, offset - from);
+	return crc.getValue();
+    }
+
+    /**
+     * Leaves what a crash after the checkpoint at <tt>offset</tt> would: the
+     * partial file and its journal entry. The first byte of the partial file
+     * differs from the source, outside the checksummed tail, so it shows
+     * whether the copy started over.
+     */
+    private void crashAt(int offset) throws IOException {
+	byte[] partial = Arrays.copyOf(content, offset);
+	partial[0] ^= 1;
+	Files.write(target.toPath(), partial);
+	journal.put(key(), new Checkpoint(target.getPath(), offset, tailChecksum(content, offset)));
+    }
+
+    private byte[] copy() throws IOException {
+	CheckpointJournal reopened = new CheckpointJournal(journalFile);
+	reopened.load();
+	assertEquals(content.length, new ResumableCopier(reopened, INTERVAL, pool, false).copy(source, target));
+	return Files.readAllBytes(target.toPath());
+    }
+
+    public void testJournalSurvivesReopening() throws Exception {
+	journal.put("a", new Checkpoint("/out/a", 10, 1));
+	journal.put("b", new Checkpoint("/out/b", 20, 2));
+	journal.remove("a");
+
+	CheckpointJournal reopened = new CheckpointJournal(journalFile);
+	reopened.load();
+	assertNull(reopened.get("a"));
+	assertEquals("/out/b", reopened.get("b").getTarget());
+	assertEquals(20, reopened.get("b").getOffset());
+	assertEquals(2, reopened.get("b").getChecksum());
+	assertTrue(reopened.isTarget("/out/b"));
+    }
+
+    public void testTornJournalIsTakenAsEmpty() throws Exception {
+	journal.put("a", new Checkpoint("/out/a", 10, 1));
+	journal.put("b", new Checkpoint("/out/b", 20, 2));
+	long length = journalFile.length();
+	for (long torn : new long[] { length - 1, length / 2, 2 }) {
+	    try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+		file.setLength(torn);
+	    }
+	    CheckpointJournal reopened = new CheckpointJournal(journalFile);
+	    reopened.load();
+	    assertNull(reopened.get("a"));
+	    assertNull(reopened.get("b"));
+	    assertTrue(reopened.getTargets().isEmpty());
+	}
+
+	Files.write(journalFile.toPath(), "not a journal".getBytes());
+	CheckpointJournal reopened = new CheckpointJournal(journalFile);
+	reopened.load();
+	assertTrue(reopened.getTargets().isEmpty());
+	// and is whole again on the next change
+	reopened.put("c", new Checkpoint("/out/c", 30, 3));
+	journal.load();
+	assertEquals(30, journal.get("c").getOffset());
+    }
+
+    public void testCopyCheckpointsEveryInterval() throws Exception {
+	final List<Long> offsets = new ArrayList<Long>();
+	CheckpointJournal recording = new CheckpointJournal(journalFile) {
+	    @Override
+	    public synchronized void put(String key, Checkpoint checkpoint) throws IOException {
+		offsets.add(checkpoint.getOffset());
+		assertEquals(tailChecksum(content, (int) checkpoint.getOffset()), checkpoint.getChecksum());
+		super.put(key, checkpoint);
+	    }
+	};
+	new ResumableCopier(recording, INTERVAL, pool, true).copy(source, target);
+	assertEquals(Arrays.asList((long) INTERVAL, 2L * INTERVAL, 3L * INTERVAL), offsets);
+	assertTrue(Arrays.equals(content, Files.readAllBytes(target.toPath())));
+	// done with, so the next copy of it starts from 0
+	journal.load();
+	assertNull(journal.get(key()));
+    }
+
+    public void testResumesFromTheCheckpoint() throws Exception {
+	crashAt(2 * INTERVAL);
+	byte[] copied = copy();
+	// the bytes before the checkpoint were not copied again
+	assertEquals(content[0] ^ 1, copied[0]);
+	assertTrue(Arrays.equals(Arrays.copyOfRange(content, 1, content.length), Arrays.copyOfRange(copied, 1, copied.length)));
+	journal.load();
+	assertNull(journal.get(key()));
+    }
+
+    public void testResumesUnderANewTempName() throws Exception {
+	crashAt(2 * INTERVAL);
+	File renamed = target;
+	target = new File(base, "target.tmp2");
+	byte[] copied = copy();
+	assertFalse(renamed.exists());
+	assertEquals(content[0] ^ 1, copied[0]);
+	assertEquals(content.length, copied.length);
+    }
+
+    public void testChangedPartialFileStartsAfresh() throws Exception {
+	crashAt(2 * INTERVAL);
+	byte[] partial = Files.readAllBytes(target.toPath());
+	partial[2 * INTERVAL - 1] ^= 1;
+	Files.write(target.toPath(), partial);
+	assertTrue(Arrays.equals(content, copy()));
+
+	// cut shorter than its checkpoint
+	crashAt(2 * INTERVAL);
+	try (RandomAccessFile file = new RandomAccessFile(target, "rw")) {
+	    file.setLength(INTERVAL);
+	}
+	assertTrue(Arrays.equals(content, copy()));
+    }
+
+    public void testChangedSourceStartsAfresh() throws Exception {
+	crashAt(2 * INTERVAL);
+	assertTrue(source.setLastModified(source.lastModified() - 60000));
+	assertTrue(Arrays.equals(content, copy()));
+
+	crashAt(2 * INTERVAL);
+	long modified = source.lastModified();
+	content = Arrays.copyOf(content, content.length + 1);
+	Files.write(source.toPath(), content);
+	assertTrue(source.setLastModified(modified));
+	assertTrue(Arrays.equals(content, copy()));
+    }
+}
@@ -0,0 +1,124 @@
+package org.tesco.file.idempotent;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import junit.framework.TestCase;
+
+import org.apache.camel.util.FileUtil;
+
+public class MappedIdempotentRepositoryTest extends TestCase {
+
+    private File base;
+    private File file;
+    private MappedIdempotentRepository repository;
+
+    @Override
+    protected void setUp() throws Exception {
+	base = new File("target/test/mapped-idempotent");
+	FileUtil.removeDir(base);
+	file = new File(base, "store");
+	repository = start(16);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+	repository.stop();
+	FileUtil.removeDir(base);
+    }
+
+    private MappedIdempotentRepository start(long capacity) throws Exception {
+	MappedIdempotentRepository started = new MappedIdempotentRepository(file, capacity);
+	started.start();
+	return started;
+    }
+
+    public void testCapacityIsAPowerOfTwo() throws Exception {
+	assertEquals(16, repository.getCapacity());
+	repository.stop();
+	file.delete();
+	repository = start(1000);
+	assertEquals(1024, repository.getCapacity());
+	repository.stop();
+	file.delete();
+	repository = start(1);
+	assertEquals(16, repository.getCapacity());
+    }
+
+    public void testAddContainsRemove() {
+	assertTrue(repository.add("a"));
+	assertFalse(repository.add("a"));
+	assertTrue(repository.contains("a"));
+	assertFalse(repository.contains("b"));
+	assertEquals(1, repository.getSize());
+
+	assertTrue(repository.remove("a"));
+	assertFalse(repository.remove("a"));
+	assertFalse(repository.contains("a"));
+	assertEquals(0, repository.getSize());
+	assertTrue(repository.add("a"));
+    }
+
+    public void testKeysSurviveRestart() throws Exception {
+	for (int i = 0; i < 100; i++) {
+	    repository.add("file-" + i);
+	}
+	repository.remove("file-7");
+	repository.stop();
+
+	repository = start(16);
+	assertEquals(99, repository.getSize());
+	assertFalse(repository.contains("file-7"));
+	for (int i = 0; i < 100; i++) {
+	    assertEquals("file-" + i, i != 7, repository.contains("file-" + i));
+	}
+    }
+
+    public void testGrowsPastItsCapacity() {
+	for (int i = 0; i < 10000; i++) {
+	    assertTrue(repository.add("file-" + i));
+	}
+	assertEquals(10000, repository.getSize());
+	assertTrue(repository.getCapacity() * 0.7 >= 10000);
+	assertEquals(repository.getCapacity() * 16 + 64, file.length());
+	for (int i = 0; i < 10000; i++) {
+	    assertTrue(repository.contains("file-" + i));
+	}
+	assertFalse(repository.contains("file-10000"));
+    }
+
+    public void testRemovalsDoNotGrowTheTable() {
+	for (int i = 0; i < 10000; i++) {
+	    repository.add("file-" + i);
+	    repository.add("file-" + i + "-done");
+	    repository.remove("file-" + i);
+	}
+	// only the done keys are left, tombstones were rebuilt away
+	assertEquals(10000, repository.getSize());
+	assertTrue("capacity " + repository.getCapacity(), repository.getCapacity() <= 32768);
+	assertFalse(repository.contains("file-9999"));
+	assertTrue(repository.contains("file-9999-done"));
+    }
+
+    public void testClear() {
+	for (int i = 0; i < 1000; i++) {
+	    repository.add("file-" + i);
+	}
+	repository.clear();
+	assertEquals(0, repository.getSize());
+	assertEquals(16, repository.getCapacity());
+	assertFalse(repository.contains("file-1"));
+	assertTrue(repository.add("file-1"));
+    }
+
+    public void testRefusesOtherFiles() throws Exception {
+	repository.stop();
+	Files.write(file.toPath(), new byte[1024]);
+	try {
+	    start(16);
+	    fail("a file without the store's header was opened");
+	} catch (IllegalStateException e) {
+	    assertTrue(e.getMessage(), e.getMessage().startsWith("Not an idempotent store"));
+	}
+    }
+}